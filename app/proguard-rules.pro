@@ -16,10 +16,42 @@
 #   public *;
 #}
 
-# Uncomment this to preserve the line number information for
-# debugging stack traces.
-#-keepattributes SourceFile,LineNumberTable
+# Keep the line numbers of the release stack traces, hiding the source file names
+-keepattributes SourceFile,LineNumberTable
+-renamesourcefileattribute SourceFile
+
+# R8 full mode keeps no attribute unless asked: generic signatures and annotations are
+# read at runtime by Gson and Retrofit (Twitter Kit)
+-keepattributes Signature,InnerClasses,EnclosingMethod,*Annotation*
+
+# Twitter Kit: API models filled by Gson and Retrofit service interfaces
+-keep class com.twitter.sdk.android.core.models.** { *; }
+-keep,allowobfuscation interface com.twitter.sdk.android.core.services.** { *; }
+-keepclassmembers,allowobfuscation class * {
+    @com.google.gson.annotations.SerializedName <fields>;
+}
+-keepclassmembers,allowshrinking,allowobfuscation interface * {
+    @retrofit2.http.* <methods>;
+}
+-dontwarn retrofit2.**
+-dontwarn okio.**
+-dontwarn okhttp3.**
+-dontwarn javax.annotation.**
+
+# FirebaseUI looks up the optional Facebook and Twitter SDKs by class name
+-keep class com.facebook.login.LoginManager
+-keep class com.twitter.sdk.android.core.identity.TwitterAuthClient
+
+# Initializers of the feature modules, instantiated by name by ProviderRegistry
+-keep class * implements it.jdark.android.firebase.authentication.ProviderRegistry$Initializer {
+    public <init>();
+}
+
+# AuthLog below the warning level is empty outside debug builds, let R8 drop the calls
+# together with the strings built for them
+-assumenosideeffects class it.jdark.android.firebase.authentication.AuthLog {
+    public static void v(...);
+    public static void d(...);
+    public static void i(...);
+}
 
-# If you keep the line number information, uncomment this to
-# hide the original source file name.
-#-renamesourcefileattribute SourceFile
@@ -0,0 +1,338 @@
+package it.jdark.android.firebase.authentication;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.test.runner.lifecycle.ActivityLifecycleMonitorRegistry;
+import android.support.test.runner.lifecycle.Stage;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Starts a login on each provider screen, rotates it {@link #ROTATIONS} times while the login
+ * is in flight and checks that none of the destroyed instances is still reachable after a few
+ * forced collections, and that the heap doesn't grow with the rotations.
+ * <p>
+ * The logins run on a {@link FakeAuthBackend} answering after {@link #BACKEND_LATENCY_MS}, so
+ * they are all pending during the rotations:
+ * <ul>
+ * <li>Facebook and Twitter: the login callback registered by the screen is taken from the
+ * SDK and handed a successful login, the screen starts the credential sign-in; the test then
+ * keeps the callback reachable, as the SDK does while its login is open;</li>
+ * <li>Phone: a verification is requested from the screen, the backend holds its callbacks.</li>
+ * </ul>
+ * The screens live in the feature modules, which {@code connectedAndroidTest} doesn't install:
+ * install the bundle with all of them, then only the test APK, and run the class with
+ * {@code am instrument}. A missing module fails the test.
+ * <pre>
+ * ./gradlew :app:bundleDebug :app:assembleDebugAndroidTest
+ * bundletool build-apks --bundle=$(ls app/build/outputs/bundle/debug/*.aab) --output=app.apks --connected-device
+ * bundletool install-apks --apks=app.apks --modules=_ALL_
+ * adb install -r app/build/outputs/apk/androidTest/debug/app-debug-androidTest.apk
+ * adb shell am instrument -w -e class it.jdark.android.firebase.authentication.ActivityLeakTest \
+ *     it.jdark.android.firebase.authentication.test/android.support.test.runner.AndroidJUnitRunner
+ * </pre>
+ * The leaked instances and the heap growth in bytes are reported by {@link BenchmarkReport}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ActivityLeakTest {
+
+    private static final String TAG = "ActivityLeakTest";
+
+    private static final String PACKAGE = "it.jdark.android.firebase.authentication.";
+
+    private static final int WARMUP_ROTATIONS = 2;
+    private static final int ROTATIONS = 20;
+    private static final long RESUME_TIMEOUT_MS = 5000;
+    // Longer than the whole test, every login stays pending
+    private static final long BACKEND_LATENCY_MS = 10 * 60 * 1000;
+    // A leaked screen keeps its whole view hierarchy, well above this once per rotation
+    private static final long HEAP_SLACK_BYTES = 1024 * 1024;
+
+    private static AuthBackend sBackend;
+
+    // The SDK callbacks of the logins in flight, kept as the SDKs keep them
+    private final List<Object> mPendingCallbacks = new ArrayList<>();
+
+    @BeforeClass
+    public static void installFakeBackend() {
+        sBackend = AuthBackends.get();
+        AuthBackends.install(new CoalescingAuthBackend(new FakeAuthBackend.Builder()
+                .setLatency(BACKEND_LATENCY_MS, 0)
+                .build()));
+        // A verification per run, whatever the previous runs left
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.getSharedPreferences("phone_verification_limits", Context.MODE_PRIVATE).edit().clear().commit();
+        context.getSharedPreferences("phone_verification_session", Context.MODE_PRIVATE).edit().clear().commit();
+    }
+
+    @AfterClass
+    public static void restoreBackend() {
+        AuthBackends.install(sBackend);
+    }
+
+    @Test
+    public void facebookDoesNotLeak() {
+        checkRotations(PACKAGE + "FacebookActivity", new Login() {
+            @Override
+            public void start(Activity activity) throws Exception {
+                ClassLoader loader = activity.getClassLoader();
+                // CallbackManagerImpl keeps the LoginManager callback wrapping the screen's one
+                Object callbackManager = fieldOfType(activity, loader.loadClass("com.facebook.CallbackManager"));
+                Map<?, ?> callbacks = (Map<?, ?>) fieldOfType(callbackManager, Map.class);
+                Class<?> facebookCallback = loader.loadClass("com.facebook.FacebookCallback");
+                Object callback = null;
+                for (Object registered : callbacks.values()) {
+                    callback = fieldOfType(registered, facebookCallback);
+                }
+                assertNotNull("No login callback registered", callback);
+                mPendingCallbacks.add(callbackManager);
+
+                Class<?> accessTokenClass = loader.loadClass("com.facebook.AccessToken");
+                Object accessToken = null;
+                for (Constructor<?> constructor : accessTokenClass.getConstructors()) {
+                    Class<?>[] types = constructor.getParameterTypes();
+                    if (types.length >= 3 && types[0] == String.class && types[1] == String.class
+                            && types[2] == String.class) {
+                        Object[] args = new Object[types.length];
+                        args[0] = "fake-access-token";
+                        args[1] = "fake-application";
+                        args[2] = "fake-user";
+                        accessToken = constructor.newInstance(args);
+                        break;
+                    }
+                }
+                Object loginResult = loader.loadClass("com.facebook.login.LoginResult")
+                        .getConstructor(accessTokenClass, Set.class, Set.class)
+                        .newInstance(accessToken, Collections.emptySet(), Collections.emptySet());
+                facebookCallback.getMethod("onSuccess", Object.class).invoke(callback, loginResult);
+            }
+        });
+    }
+
+    @Test
+    public void twitterDoesNotLeak() {
+        checkRotations(PACKAGE + "TwitterActivity", new Login() {
+            @Override
+            public void start(Activity activity) throws Exception {
+                ClassLoader loader = activity.getClassLoader();
+                View button = findView(activity.getWindow().getDecorView(),
+                        loader.loadClass("com.twitter.sdk.android.core.identity.TwitterLoginButton"));
+                assertNotNull("No login button", button);
+                Object callback = button.getClass().getMethod("getCallback").invoke(button);
+                mPendingCallbacks.add(callback);
+
+                Class<?> tokenClass = loader.loadClass("com.twitter.sdk.android.core.TwitterAuthToken");
+                Object token = tokenClass.getConstructor(String.class, String.class)
+                        .newInstance("fake-token", "fake-secret");
+                Object session = loader.loadClass("com.twitter.sdk.android.core.TwitterSession")
+                        .getConstructor(tokenClass, long.class, String.class)
+                        .newInstance(token, 1L, "fake-user");
+                Class<?> resultClass = loader.loadClass("com.twitter.sdk.android.core.Result");
+                Object result = resultClass.getConstructors()[0].newInstance(session, null);
+                loader.loadClass("com.twitter.sdk.android.core.Callback")
+                        .getMethod("success", resultClass).invoke(callback, result);
+            }
+        });
+    }
+
+    @Test
+    public void phoneDoesNotLeak() {
+        checkRotations(PACKAGE + "PhoneActivity", new Login() {
+            @Override
+            public void start(Activity activity) {
+                EditText number = (EditText) activity.findViewById(id(activity, "phone_number"));
+                number.setText("+39 333 123 4567");
+                assertTrue(activity.findViewById(id(activity, "register_signin_button")).performClick());
+            }
+        });
+    }
+
+    private interface Login {
+        // Called on the main thread, with the screen resumed
+        void start(Activity activity) throws Exception;
+    }
+
+    private void checkRotations(String className, final Login login) {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        assertTrue(className + " not installed, see the class documentation to install the feature modules",
+                isInstalled(className));
+
+        Intent intent = new Intent(Intent.ACTION_MAIN)
+                .setClassName(instrumentation.getTargetContext(), className)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        Activity activity = instrumentation.startActivitySync(intent);
+        final Activity first = activity;
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    login.start(first);
+                } catch (Exception e) {
+                    throw new AssertionError("Login not started", e);
+                }
+            }
+        });
+        instrumentation.waitForIdleSync();
+
+        List<WeakReference<Activity>> instances = new ArrayList<>();
+        instances.add(new WeakReference<>(activity));
+
+        for (int i = 0; i < WARMUP_ROTATIONS; i++) {
+            activity = rotate(activity, i);
+            instances.add(new WeakReference<>(activity));
+        }
+        long baseline = usedHeapAfterGc();
+
+        for (int i = 0; i < ROTATIONS; i++) {
+            activity = rotate(activity, WARMUP_ROTATIONS + i);
+            instances.add(new WeakReference<>(activity));
+        }
+        long growth = usedHeapAfterGc() - baseline;
+
+        int leaked = 0;
+        for (WeakReference<Activity> instance : instances) {
+            Activity alive = instance.get();
+            if (alive != null && alive != activity) {
+                leaked++;
+            }
+        }
+        finish(activity);
+        // Reachable until here, like a login the SDK hasn't closed yet
+        mPendingCallbacks.clear();
+
+        String screen = className.substring(className.lastIndexOf('.') + 1);
+        BenchmarkReport report = new BenchmarkReport(TAG);
+        report.record(screen + ".leaked", "instances", leaked);
+        report.record(screen + ".heap_growth", "bytes", growth);
+        assertEquals(screen + " instances still reachable after destroy", 0, leaked);
+        assertTrue(screen + " heap grew by " + growth + " bytes", growth < HEAP_SLACK_BYTES);
+    }
+
+    private static int id(Activity activity, String name) {
+        int id = activity.getResources().getIdentifier(name, "id", activity.getPackageName());
+        assertTrue("No view " + name, id != 0);
+        return id;
+    }
+
+    // Value of the first instance field of the object, declared by its class or a superclass, of the given type
+    private static Object fieldOfType(Object object, Class<?> type) throws IllegalAccessException {
+        for (Class<?> c = object.getClass(); c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && type.isAssignableFrom(field.getType())) {
+                    field.setAccessible(true);
+                    return field.get(object);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static View findView(View view, Class<?> type) {
+        if (type.isInstance(view)) {
+            return view;
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                View found = findView(group.getChildAt(i), type);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInstalled(String className) {
+        try {
+            Class.forName(className, false, InstrumentationRegistry.getTargetContext().getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    // Flips the orientation and waits for the recreated instance to be resumed
+    private static Activity rotate(final Activity activity, int i) {
+        final int orientation = (i & 1) == 0
+                ? ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE
+                : ActivityInfo.SCREEN_ORIENTATION_PORTRAIT;
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                activity.setRequestedOrientation(orientation);
+            }
+        });
+
+        final Activity[] recreated = new Activity[1];
+        long deadline = SystemClock.uptimeMillis() + RESUME_TIMEOUT_MS;
+        while (recreated[0] == null && SystemClock.uptimeMillis() < deadline) {
+            instrumentation.waitForIdleSync();
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    Collection<Activity> resumed = ActivityLifecycleMonitorRegistry.getInstance()
+                            .getActivitiesInStage(Stage.RESUMED);
+                    for (Activity candidate : resumed) {
+                        if (candidate != activity && candidate.getClass() == activity.getClass()) {
+                            recreated[0] = candidate;
+                        }
+                    }
+                }
+            });
+            SystemClock.sleep(50);
+        }
+        assertNotNull("Not recreated after rotation " + i, recreated[0]);
+        return recreated[0];
+    }
+
+    private static void finish(final Activity activity) {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                activity.finish();
+            }
+        });
+        instrumentation.waitForIdleSync();
+    }
+
+    private static long usedHeapAfterGc() {
+        // A single request is only a hint, the finalizers can keep references for one more cycle
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            System.runFinalization();
+            SystemClock.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
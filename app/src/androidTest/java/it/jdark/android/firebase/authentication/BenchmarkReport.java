@@ -0,0 +1,49 @@
+package it.jdark.android.firebase.authentication;
+
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Reports the samples of the in-process benchmarks of the app, the same way the
+ * {@code :benchmark} module does: every metric is sent as instrumentation status, named
+ * {@code <suite>.<metric>} with its unit, min, median and max, and logged.
+ * <p>
+ * The two test APKs don't share code, keep the status keys of both reports in step.
+ */
+final class BenchmarkReport {
+
+    private static final String TAG = "BenchmarkReport";
+
+    // Status code used for the metrics, away from the ones used by the JUnit runner
+    private static final int STATUS_METRIC = 2;
+
+    private final String mSuite;
+
+    BenchmarkReport(String suite) {
+        mSuite = suite;
+    }
+
+    /**
+     * Reports the min, median and max of the samples of a metric, returns the median.
+     */
+    long record(String metric, String unit, long... samples) {
+        long[] sorted = Arrays.copyOf(samples, samples.length);
+        Arrays.sort(sorted);
+        long min = sorted[0];
+        long median = sorted[sorted.length / 2];
+        long max = sorted[sorted.length - 1];
+
+        Bundle status = new Bundle();
+        status.putString("metric", mSuite + "." + metric);
+        status.putString("unit", unit);
+        status.putLong("min", min);
+        status.putLong("median", median);
+        status.putLong("max", max);
+        InstrumentationRegistry.getInstrumentation().sendStatus(STATUS_METRIC, status);
+        Log.i(TAG, mSuite + "." + metric + " median=" + median + unit + " min=" + min + unit + " max=" + max + unit);
+        return median;
+    }
+}
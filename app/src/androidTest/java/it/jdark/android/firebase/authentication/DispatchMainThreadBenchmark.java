@@ -0,0 +1,116 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.android.gms.tasks.TaskExecutors;
+import com.google.android.gms.tasks.Tasks;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the main thread time of a sign-in result delivered by {@link AuthResultDispatcher},
+ * the {@link AuthTrace} histogram {@code dispatch.main_thread}, with the result unpacked on
+ * the main thread (the baseline, before the dispatcher moved it to a background thread) and
+ * on {@link AuthExecutors#background()}.
+ * <p>
+ * Each mode delivers {@link #DISPATCHES} results, the mean of the histogram is reported in
+ * nanoseconds by {@link BenchmarkReport}:
+ * <pre>
+ * ./gradlew :app:connectedAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=it.jdark.android.firebase.authentication.DispatchMainThreadBenchmark
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class DispatchMainThreadBenchmark {
+
+    private static final String TAG = "DispatchMainThreadBenchmark";
+
+    private static final int WARMUP = 100;
+    private static final int DISPATCHES = 1000;
+
+    private static final UserSnapshot USER = new UserSnapshot("uid", "user@example.com", null, null, true);
+
+    @Rule
+    public final ActivityTestRule<EmailPasswordActivity> mActivityRule =
+            new ActivityTestRule<>(EmailPasswordActivity.class);
+
+    private final BenchmarkReport mReport = new BenchmarkReport(TAG);
+    private final Executor mBackground = AuthExecutors.background();
+    private final ScheduledExecutorService mScheduler = AuthExecutors.scheduler();
+    private final Executor mMain = AuthExecutors.main();
+
+    @After
+    public void restoreExecutors() {
+        AuthExecutors.install(mBackground, mScheduler, mMain);
+    }
+
+    @Test
+    public void mainThreadCost() throws Throwable {
+        AuthExecutors.install(TaskExecutors.MAIN_THREAD, mScheduler, TaskExecutors.MAIN_THREAD);
+        double before = measure("unpack_on_main");
+
+        AuthExecutors.install(mBackground, mScheduler, mMain);
+        double after = measure("unpack_on_background");
+
+        Log.i(TAG, "dispatch.main_thread before=" + before + "ns after=" + after + "ns");
+        assertTrue("Main thread time grew from " + before + "ns to " + after + "ns", after <= before * 1.1);
+    }
+
+    // Mean of dispatch.main_thread in ns over the dispatches of one mode
+    private double measure(String mode) throws Throwable {
+        dispatch(WARMUP);
+        AuthTrace.reset();
+        dispatch(DISPATCHES);
+
+        StringWriter json = new StringWriter();
+        AuthTrace.dump(new PrintWriter(json));
+        JSONObject histogram = new JSONObject(json.toString())
+                .getJSONObject("stages").getJSONObject("dispatch.main_thread");
+        assertEquals(DISPATCHES, histogram.getLong("count"));
+        double mean = histogram.getDouble("mean_ms") * 1000000;
+        mReport.record(mode, "ns", Math.round(mean));
+        return mean;
+    }
+
+    private void dispatch(final int count) throws Throwable {
+        final CountDownLatch delivered = new CountDownLatch(count);
+        final EmailPasswordActivity activity = mActivityRule.getActivity();
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                AuthResultDispatcher dispatcher = new AuthResultDispatcher(activity,
+                        new AuthResultDispatcher.Callback() {
+                            @Override
+                            public void onAuthSucceeded(UserSnapshot user) {
+                                delivered.countDown();
+                            }
+
+                            @Override
+                            public void onAuthFailed(AuthError error) {
+                                throw new AssertionError(error);
+                            }
+                        });
+                for (int i = 0; i < count; i++) {
+                    dispatcher.dispatch(Tasks.forResult(USER));
+                }
+            }
+        });
+        assertTrue("Results not delivered", delivered.await(30, TimeUnit.SECONDS));
+    }
+}
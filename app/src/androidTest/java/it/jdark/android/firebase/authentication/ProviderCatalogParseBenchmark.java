@@ -0,0 +1,67 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the parse of the {@code providers.json} asset done by {@link ProviderCatalog} on
+ * the first ChooserActivity start, asset open and string lookups included. The budget is
+ * one millisecond at the median.
+ * <p>
+ * Each sample is one parse in nanoseconds, reported by {@link BenchmarkReport}:
+ * <pre>
+ * ./gradlew :app:connectedAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=it.jdark.android.firebase.authentication.ProviderCatalogParseBenchmark
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProviderCatalogParseBenchmark {
+
+    private static final String TAG = "ProviderCatalogParseBenchmark";
+
+    private static final int WARMUP = 20;
+    private static final int SAMPLES = 51;
+    private static final long BUDGET_NS = 1000000;
+
+    @Test
+    public void assetMatchesScreens() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        List<ProviderCatalog.Entry> entries = parse(context);
+        assertEquals(6, entries.size());
+        assertEquals("EmailPasswordActivity", entries.get(0).getTitle());
+        assertEquals(context.getString(R.string.desc_email_and_passwd), entries.get(0).getDescription());
+        assertEquals("facebook", entries.get(3).getModule());
+        assertEquals(ProviderRegistry.Provider.FACEBOOK, entries.get(3).getProvider());
+    }
+
+    @Test
+    public void parseCost() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        for (int i = 0; i < WARMUP; i++) {
+            parse(context);
+        }
+
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            parse(context);
+            samples[i] = System.nanoTime() - start;
+        }
+
+        long median = new BenchmarkReport(TAG).record("parse", "ns", samples);
+        assertTrue("Median parse " + median + "ns over budget", median < BUDGET_NS);
+    }
+
+    private static List<ProviderCatalog.Entry> parse(Context context) throws Exception {
+        return ProviderCatalog.parse(context, context.getAssets().open("providers.json"));
+    }
+}
@@ -0,0 +1,103 @@
+package it.jdark.android.firebase.authentication;
+
+import android.app.Activity;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertSame;
+
+/**
+ * Measures the cost of the view updates done by EmailPasswordActivity.updateUI on every
+ * session change, looking the views up in the hierarchy (as the screens used to do) and
+ * reading them from the {@link EmailPasswordActivity.Views} holder.
+ * <p>
+ * Each sample is the mean time of {@link #TRANSITIONS} signed in / signed out transitions
+ * in nanoseconds, reported by {@link BenchmarkReport}:
+ * <pre>
+ * ./gradlew :app:connectedAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=it.jdark.android.firebase.authentication.UpdateUiLookupBenchmark
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class UpdateUiLookupBenchmark {
+
+    private static final String TAG = "UpdateUiLookupBenchmark";
+
+    private static final int SAMPLES = 15;
+    private static final int TRANSITIONS = 1000;
+
+    @Rule
+    public final ActivityTestRule<EmailPasswordActivity> mActivityRule =
+            new ActivityTestRule<>(EmailPasswordActivity.class);
+
+    @Test
+    public void holderMatchesHierarchy() throws Throwable {
+        final EmailPasswordActivity activity = mActivityRule.getActivity();
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                EmailPasswordActivity.Views views = activity.mViews;
+                assertSame(activity.findViewById(R.id.status), views.status);
+                assertSame(activity.findViewById(R.id.details), views.detail);
+                assertSame(activity.findViewById(R.id.inputs_layout), views.inputsLayout);
+                assertSame(activity.findViewById(R.id.signin_layout), views.signinLayout);
+                assertSame(activity.findViewById(R.id.signed_layout), views.signedLayout);
+                assertSame(activity.findViewById(R.id.email_password_verify_btn), views.verifyButton);
+            }
+        });
+    }
+
+    @Test
+    public void transitionCost() throws Throwable {
+        final EmailPasswordActivity activity = mActivityRule.getActivity();
+        final long[] lookup = new long[SAMPLES];
+        final long[] holder = new long[SAMPLES];
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                // Warm up both paths before sampling
+                lookupTransitions(activity);
+                holderTransitions(activity.mViews);
+
+                for (int i = 0; i < SAMPLES; i++) {
+                    lookup[i] = lookupTransitions(activity);
+                    holder[i] = holderTransitions(activity.mViews);
+                }
+            }
+        });
+
+        BenchmarkReport report = new BenchmarkReport(TAG);
+        report.record("lookup", "ns", lookup);
+        report.record("holder", "ns", holder);
+    }
+
+    private static long lookupTransitions(Activity activity) {
+        long start = System.nanoTime();
+        for (int i = 0; i < TRANSITIONS; i++) {
+            boolean signedIn = (i & 1) == 0;
+            activity.findViewById(R.id.inputs_layout).setVisibility(signedIn ? View.GONE : View.VISIBLE);
+            activity.findViewById(R.id.signin_layout).setVisibility(signedIn ? View.GONE : View.VISIBLE);
+            activity.findViewById(R.id.signed_layout).setVisibility(signedIn ? View.VISIBLE : View.GONE);
+            activity.findViewById(R.id.email_password_verify_btn).setEnabled(signedIn);
+        }
+        return (System.nanoTime() - start) / TRANSITIONS;
+    }
+
+    private static long holderTransitions(EmailPasswordActivity.Views views) {
+        long start = System.nanoTime();
+        for (int i = 0; i < TRANSITIONS; i++) {
+            boolean signedIn = (i & 1) == 0;
+            views.inputsLayout.setVisibility(signedIn ? View.GONE : View.VISIBLE);
+            views.signinLayout.setVisibility(signedIn ? View.GONE : View.VISIBLE);
+            views.signedLayout.setVisibility(signedIn ? View.VISIBLE : View.GONE);
+            views.verifyButton.setEnabled(signedIn);
+        }
+        return (System.nanoTime() - start) / TRANSITIONS;
+    }
+}
@@ -0,0 +1,64 @@
+package it.jdark.android.firebase.authentication;
+
+import android.app.Activity;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.auth.AuthCredential;
+import com.google.firebase.auth.PhoneAuthProvider;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authentication operations used by the sign-in screens.
+ * <p>
+ * {@link FirebaseAuthBackend} forwards them to Firebase, {@link FakeAuthBackend} answers in
+ * process without network. Use {@link AuthBackends#get()} to obtain the backend of the
+ * current build.
+ * <p>
+ * The sign-in calls take a {@link CancellationToken}, usually the one of the screen's
+ * {@link AuthResultDispatcher}: once it is cancelled the returned task completes as
+ * cancelled and the work not yet started for it is dropped.
+ */
+public interface AuthBackend {
+
+    interface StateListener {
+        void onUserChanged(@Nullable UserSnapshot user);
+    }
+
+    @Nullable
+    UserSnapshot getCurrentUser();
+
+    void addStateListener(@NonNull StateListener listener);
+
+    void removeStateListener(@NonNull StateListener listener);
+
+    Task<UserSnapshot> signInWithEmailAndPassword(String email, String password,
+                                                  @NonNull CancellationToken cancellation);
+
+    Task<UserSnapshot> createUserWithEmailAndPassword(String email, String password,
+                                                      @NonNull CancellationToken cancellation);
+
+    Task<UserSnapshot> signInWithCredential(AuthCredential credential,
+                                            @NonNull CancellationToken cancellation);
+
+    Task<Void> sendEmailVerification();
+
+    /**
+     * Returns the ID token of the signed in user, fetching a new one when forced or when the
+     * one held by the backend is about to expire. Fails when nobody is signed in.
+     */
+    Task<IdToken> getIdToken(boolean forceRefresh);
+
+    /**
+     * Starts the phone number verification, a null token sends a new code while a token
+     * received in onCodeSent resends the previous one.
+     */
+    void verifyPhoneNumber(String phoneNumber, long timeout, TimeUnit unit, Activity activity,
+                           PhoneAuthProvider.OnVerificationStateChangedCallbacks callbacks,
+                           @Nullable PhoneAuthProvider.ForceResendingToken token);
+
+    void signOut();
+}
@@ -0,0 +1,37 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.annotation.VisibleForTesting;
+
+import com.google.firebase.auth.FirebaseAuth;
+
+/**
+ * Holds the {@link AuthBackend} used by the process.
+ * <p>
+ * Builds with {@code BuildConfig.FAKE_AUTH_BACKEND} set (the "benchmark" build type) run on
+ * {@link FakeAuthBackend}, every other build on {@link FirebaseAuthBackend}. Either one is
+ * wrapped in a {@link CoalescingAuthBackend}, so duplicate email/password requests share a round trip.
+ */
+public final class AuthBackends {
+
+    private static AuthBackend sBackend;
+
+    private AuthBackends() {
+    }
+
+    public static synchronized AuthBackend get() {
+        if (sBackend == null) {
+            sBackend = new CoalescingAuthBackend(BuildConfig.FAKE_AUTH_BACKEND
+                    ? new FakeAuthBackend.Builder().build()
+                    : new FirebaseAuthBackend(FirebaseAuth.getInstance()));
+        }
+        return sBackend;
+    }
+
+    /**
+     * Replaces the backend, must be called before the first screen asks for it.
+     */
+    @VisibleForTesting
+    public static synchronized void install(AuthBackend backend) {
+        sBackend = backend;
+    }
+}
@@ -0,0 +1,32 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.annotation.StringRes;
+
+/**
+ * Reason of an authentication failure, as resolved by {@link AuthErrorClassifier}.
+ * Each value carries the message shown to the user.
+ */
+public enum AuthError {
+    USER_COLLISION(R.string.auth_failed_collision),
+    INVALID_CREDENTIAL(R.string.auth_failed),
+    INVALID_USER(R.string.auth_failed),
+    WEAK_PASSWORD(R.string.auth_error_weak_password),
+    INVALID_PHONE_NUMBER(R.string.auth_error_invalid_phone_number),
+    INVALID_VERIFICATION_ID(R.string.auth_error_verification_id),
+    INVALID_VERIFICATION_CODE(R.string.auth_error_verification_code),
+    PROVIDER_DISABLED(R.string.auth_error_provider_disabled),
+    TOO_MANY_REQUESTS(R.string.auth_error_quota),
+    NETWORK(R.string.auth_error_network),
+    UNKNOWN(R.string.auth_failed);
+
+    private final int mMessage;
+
+    AuthError(@StringRes int message) {
+        mMessage = message;
+    }
+
+    @StringRes
+    public int getMessage() {
+        return mMessage;
+    }
+}
@@ -0,0 +1,107 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.annotation.NonNull;
+
+import com.google.firebase.FirebaseNetworkException;
+import com.google.firebase.FirebaseTooManyRequestsException;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseAuthInvalidCredentialsException;
+import com.google.firebase.auth.FirebaseAuthInvalidUserException;
+import com.google.firebase.auth.FirebaseAuthUserCollisionException;
+import com.google.firebase.auth.FirebaseAuthWeakPasswordException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the exceptions of the authentication tasks to an {@link AuthError}, shared by all the
+ * providers.
+ * <p>
+ * {@link FirebaseAuthException}s are resolved from their error code with a single map
+ * lookup. Any other exception is resolved from its class, walking the hierarchy the first
+ * time a class is seen and caching the answer for the next ones.
+ */
+public final class AuthErrorClassifier {
+
+    private static final Map<String, AuthError> ERROR_CODES = new HashMap<>();
+
+    static {
+        ERROR_CODES.put("ERROR_EMAIL_ALREADY_IN_USE", AuthError.USER_COLLISION);
+        ERROR_CODES.put("ERROR_CREDENTIAL_ALREADY_IN_USE", AuthError.USER_COLLISION);
+        ERROR_CODES.put("ERROR_ACCOUNT_EXISTS_WITH_DIFFERENT_CREDENTIAL", AuthError.USER_COLLISION);
+
+        ERROR_CODES.put("ERROR_INVALID_CREDENTIAL", AuthError.INVALID_CREDENTIAL);
+        ERROR_CODES.put("ERROR_INVALID_EMAIL", AuthError.INVALID_CREDENTIAL);
+        ERROR_CODES.put("ERROR_WRONG_PASSWORD", AuthError.INVALID_CREDENTIAL);
+        ERROR_CODES.put("ERROR_INVALID_CUSTOM_TOKEN", AuthError.INVALID_CREDENTIAL);
+        ERROR_CODES.put("ERROR_CUSTOM_TOKEN_MISMATCH", AuthError.INVALID_CREDENTIAL);
+
+        ERROR_CODES.put("ERROR_USER_NOT_FOUND", AuthError.INVALID_USER);
+        ERROR_CODES.put("ERROR_USER_DISABLED", AuthError.INVALID_USER);
+        ERROR_CODES.put("ERROR_USER_TOKEN_EXPIRED", AuthError.INVALID_USER);
+        ERROR_CODES.put("ERROR_INVALID_USER_TOKEN", AuthError.INVALID_USER);
+        ERROR_CODES.put("ERROR_USER_MISMATCH", AuthError.INVALID_USER);
+
+        ERROR_CODES.put("ERROR_WEAK_PASSWORD", AuthError.WEAK_PASSWORD);
+
+        ERROR_CODES.put("ERROR_INVALID_PHONE_NUMBER", AuthError.INVALID_PHONE_NUMBER);
+        ERROR_CODES.put("ERROR_MISSING_PHONE_NUMBER", AuthError.INVALID_PHONE_NUMBER);
+        ERROR_CODES.put("ERROR_INVALID_VERIFICATION_ID", AuthError.INVALID_VERIFICATION_ID);
+        ERROR_CODES.put("ERROR_MISSING_VERIFICATION_ID", AuthError.INVALID_VERIFICATION_ID);
+        ERROR_CODES.put("ERROR_INVALID_VERIFICATION_CODE", AuthError.INVALID_VERIFICATION_CODE);
+        ERROR_CODES.put("ERROR_MISSING_VERIFICATION_CODE", AuthError.INVALID_VERIFICATION_CODE);
+        ERROR_CODES.put("ERROR_SESSION_EXPIRED", AuthError.INVALID_VERIFICATION_CODE);
+
+        ERROR_CODES.put("ERROR_OPERATION_NOT_ALLOWED", AuthError.PROVIDER_DISABLED);
+        ERROR_CODES.put("ERROR_APP_NOT_AUTHORIZED", AuthError.PROVIDER_DISABLED);
+
+        ERROR_CODES.put("ERROR_QUOTA_EXCEEDED", AuthError.TOO_MANY_REQUESTS);
+        ERROR_CODES.put("ERROR_TOO_MANY_REQUESTS", AuthError.TOO_MANY_REQUESTS);
+
+        ERROR_CODES.put("ERROR_NETWORK_REQUEST_FAILED", AuthError.NETWORK);
+    }
+
+    private static final Map<Class<?>, AuthError> sByClass = new ConcurrentHashMap<>();
+
+    private AuthErrorClassifier() {
+    }
+
+    @NonNull
+    public static AuthError classify(Exception e) {
+        if (e == null) {
+            return AuthError.UNKNOWN;
+        }
+        if (e instanceof FirebaseAuthException) {
+            AuthError error = ERROR_CODES.get(((FirebaseAuthException) e).getErrorCode());
+            if (error != null) {
+                return error;
+            }
+        }
+
+        Class<?> type = e.getClass();
+        AuthError error = sByClass.get(type);
+        if (error == null) {
+            error = classifyType(type);
+            sByClass.put(type, error);
+        }
+        return error;
+    }
+
+    private static AuthError classifyType(Class<?> type) {
+        if (FirebaseAuthUserCollisionException.class.isAssignableFrom(type)) {
+            return AuthError.USER_COLLISION;
+        } else if (FirebaseAuthWeakPasswordException.class.isAssignableFrom(type)) {
+            return AuthError.WEAK_PASSWORD;
+        } else if (FirebaseAuthInvalidCredentialsException.class.isAssignableFrom(type)) {
+            return AuthError.INVALID_CREDENTIAL;
+        } else if (FirebaseAuthInvalidUserException.class.isAssignableFrom(type)) {
+            return AuthError.INVALID_USER;
+        } else if (FirebaseTooManyRequestsException.class.isAssignableFrom(type)) {
+            return AuthError.TOO_MANY_REQUESTS;
+        } else if (FirebaseNetworkException.class.isAssignableFrom(type)) {
+            return AuthError.NETWORK;
+        }
+        return AuthError.UNKNOWN;
+    }
+}
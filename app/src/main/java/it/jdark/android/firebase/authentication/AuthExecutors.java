@@ -0,0 +1,97 @@
+package it.jdark.android.firebase.authentication;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.android.gms.tasks.TaskExecutors;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors of the authentication code.
+ * <ul>
+ * <li>{@link #background()}: a bounded pool of background priority threads, for the work
+ * around a sign-in that doesn't touch views (building credentials, classifying and logging
+ * results, starting SDKs)</li>
+ * <li>{@link #scheduler()}: a single thread for delayed work, like the token refreshes</li>
+ * <li>{@link #main()}: the main thread, only for handing the final state to the screens</li>
+ * </ul>
+ * The executors can be replaced with {@link #install(Executor, ScheduledExecutorService, Executor)},
+ * for instance by tests running everything on a single thread.
+ */
+public final class AuthExecutors {
+
+    // Sign-in work is short and mostly waits on the network, a couple of threads are enough
+    private static final int BACKGROUND_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static Executor sBackground;
+    private static ScheduledExecutorService sScheduler;
+    private static Executor sMain = TaskExecutors.MAIN_THREAD;
+
+    private AuthExecutors() {
+    }
+
+    public static synchronized Executor background() {
+        if (sBackground == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(BACKGROUND_THREADS, BACKGROUND_THREADS,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new AuthThreadFactory("auth-background"));
+            // Idle threads go away, the pool costs nothing between sign-ins
+            pool.allowCoreThreadTimeOut(true);
+            sBackground = pool;
+        }
+        return sBackground;
+    }
+
+    public static synchronized ScheduledExecutorService scheduler() {
+        if (sScheduler == null) {
+            sScheduler = Executors.newSingleThreadScheduledExecutor(new AuthThreadFactory("auth-scheduler"));
+        }
+        return sScheduler;
+    }
+
+    public static synchronized Executor main() {
+        return sMain;
+    }
+
+    /**
+     * Replaces the executors, must be called before the first screen uses them.
+     */
+    @VisibleForTesting
+    public static synchronized void install(Executor background, ScheduledExecutorService scheduler,
+                                            Executor main) {
+        sBackground = background;
+        sScheduler = scheduler;
+        sMain = main;
+    }
+
+    private static final class AuthThreadFactory implements ThreadFactory {
+
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        AuthThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, mName + "-" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package it.jdark.android.firebase.authentication;
+
+import android.util.Log;
+
+/**
+ * Logging of the app, compiled out of release builds below the warning level.
+ * <p>
+ * {@link #ENABLED} is the compile time constant {@code BuildConfig.AUTH_LOG}, true only for
+ * debug builds: in the other builds the bodies of {@link #v}, {@link #d} and {@link #i} are
+ * empty, and proguard-rules.pro tells R8 the calls have no side effect, so the calls and the
+ * strings built for them are removed as well. Warnings and errors are always logged and must
+ * not carry user data (emails, phone numbers, codes, tokens).
+ */
+public final class AuthLog {
+
+    public static final boolean ENABLED = BuildConfig.AUTH_LOG;
+
+    private AuthLog() {
+    }
+
+    public static void v(String tag, String message) {
+        if (ENABLED) {
+            Log.v(tag, message);
+        }
+    }
+
+    public static void d(String tag, String message) {
+        if (ENABLED) {
+            Log.d(tag, message);
+        }
+    }
+
+    public static void i(String tag, String message) {
+        if (ENABLED) {
+            Log.i(tag, message);
+        }
+    }
+
+    public static void w(String tag, String message) {
+        Log.w(tag, message);
+    }
+
+    public static void w(String tag, String message, Throwable tr) {
+        Log.w(tag, message, tr);
+    }
+
+    public static void e(String tag, String message, Throwable tr) {
+        Log.e(tag, message, tr);
+    }
+}
@@ -0,0 +1,254 @@
+package it.jdark.android.firebase.authentication;
+
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.OnLifecycleEvent;
+import android.content.Context;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.app.AppCompatActivity;
+import android.widget.Toast;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.SuccessContinuation;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.AuthCredential;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Receives the outcome of the sign-in tasks started by one screen.
+ * <p>
+ * A screen creates a single dispatcher in onCreate and hands it every sign-in task. The
+ * result is unpacked and failures are classified by {@link AuthErrorClassifier} and logged on
+ * {@link AuthExecutors#background()}, only the outcome reaches the main thread, where it is
+ * reported to the user the same way on every screen and handed to the screen.
+ * <p>
+ * The main thread time of every delivery is recorded by {@link AuthTrace} as
+ * {@code dispatch.main_thread}, the unpacking included when {@link AuthExecutors} runs it on
+ * the main thread, as the baseline of DispatchMainThreadBenchmark does. Apart from its
+ * cancellation token, an attempt allocates nothing of its own: one object plays every
+ * role of the chain (credential callable, continuations, listener) and is reused by the next
+ * attempt, the result reaches the main thread as the user or the {@link AuthError} itself,
+ * and the screens build their credentials with a constant {@link CredentialFactory}.
+ * <p>
+ * Every sign-in attempt gets its own cancellation token from {@link #getCancellationToken()},
+ * released with the attempt once its task is delivered, so the listeners the backends add
+ * to the token go away with it instead of piling up on one token for the life of the screen.
+ * <p>
+ * The dispatcher follows the lifecycle of its owner: once the owner is destroyed the
+ * references to it are dropped, a task completing later neither keeps it alive nor calls
+ * it back. The attempts still pending are cancelled at the same time, so a rotation or a
+ * back press doesn't leave them running for nobody. The dispatcher is used from the main
+ * thread.
+ */
+public final class AuthResultDispatcher implements LifecycleObserver {
+
+    /**
+     * Outcome of an attempt, on the main thread. The backend also reports a signed in user
+     * to {@link AuthSessionManager}, its observers get it in onSessionChanged whether or not
+     * the screen that started the attempt is still alive.
+     */
+    public interface Callback {
+        void onAuthSucceeded(UserSnapshot user);
+
+        void onAuthFailed(AuthError error);
+    }
+
+    /**
+     * Builds the credential of a provider from what its SDK returned, on a background thread.
+     * Screens keep one instance in a constant.
+     */
+    public interface CredentialFactory {
+        AuthCredential create(String id, @Nullable String secret);
+    }
+
+    private final String TAG;
+
+    // Attempts not delivered yet, and the one whose token was handed out but not dispatched
+    private final List<Attempt> mPending = new ArrayList<>();
+    private Attempt mIssued;
+    // The attempt of the previous sign-in, reused by the next one
+    private Attempt mSpare;
+    private boolean mDestroyed;
+
+    private Context mContext;
+    private Callback mCallback;
+
+    public AuthResultDispatcher(AppCompatActivity owner, Callback callback) {
+        TAG = owner.getClass().getSimpleName();
+        mContext = owner;
+        mCallback = callback;
+        owner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * Token of the next sign-in attempt, to hand to its {@link AuthBackend} calls. The calls
+     * made until the attempt is passed to {@link #dispatch(Task)} share it, it is cancelled
+     * when the owner is destroyed and released once the attempt is delivered.
+     */
+    public CancellationToken getCancellationToken() {
+        return issue().mCancellation.getToken();
+    }
+
+    /**
+     * Whether an attempt was dispatched and its result not delivered yet.
+     */
+    public boolean isPending() {
+        return mPending.size() > (mIssued != null ? 1 : 0);
+    }
+
+    private Attempt issue() {
+        if (mIssued == null) {
+            Attempt attempt = mSpare != null ? mSpare : new Attempt();
+            mSpare = null;
+            // A token keeps the listeners of its calls, it is never shared between attempts
+            attempt.mCancellation = new CancellationTokenSource();
+            if (mDestroyed) {
+                attempt.mCancellation.cancel();
+            }
+            mPending.add(attempt);
+            mIssued = attempt;
+        }
+        return mIssued;
+    }
+
+    /**
+     * Delivers the result of the task to the owner, on the main thread.
+     */
+    public void dispatch(Task<UserSnapshot> task) {
+        dispatch(issue(), task);
+    }
+
+    /**
+     * Builds the credential on a background thread, signs in with it and delivers the
+     * result like {@link #dispatch(Task)}. The build is timed as the {@code get_credential}
+     * stage of the trace, when there is one.
+     */
+    public void dispatchCredential(AuthBackend backend, CredentialFactory factory, String id,
+                                   @Nullable String secret, @Nullable AuthTrace.Flow trace) {
+        Attempt attempt = issue();
+        attempt.mBackend = backend;
+        attempt.mFactory = factory;
+        attempt.mId = id;
+        attempt.mSecret = secret;
+        attempt.mTrace = trace;
+        dispatch(attempt, Tasks.call(AuthExecutors.background(), attempt)
+                .onSuccessTask(AuthTasks.DIRECT, attempt));
+    }
+
+    private void dispatch(Attempt attempt, Task<UserSnapshot> task) {
+        mIssued = null;
+        task.continueWith(AuthExecutors.background(), attempt)
+                .addOnCompleteListener(AuthExecutors.main(), attempt);
+    }
+
+    @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+    void onOwnerDestroyed() {
+        mDestroyed = true;
+        for (Attempt attempt : mPending) {
+            attempt.mCancellation.cancel();
+        }
+        mPending.clear();
+        mIssued = null;
+        mContext = null;
+        mCallback = null;
+    }
+
+    // Result is the user, the classified error, or null when the attempt was cancelled
+    private void deliver(@Nullable Object result, long unpackNs) {
+        Callback callback = mCallback;
+        if (callback == null || result == null) {
+            AuthLog.d(TAG, "onComplete: owner destroyed, result dropped");
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (result instanceof AuthError) {
+            AuthError error = (AuthError) result;
+            Toast.makeText(mContext, error.getMessage(), Toast.LENGTH_SHORT).show();
+            callback.onAuthFailed(error);
+        } else {
+            callback.onAuthSucceeded((UserSnapshot) result);
+        }
+        AuthTrace.record("dispatch.main_thread", unpackNs + System.nanoTime() - start);
+    }
+
+    /**
+     * A sign-in attempt: builds the credential, signs in with it, unpacks the result off the
+     * main thread and delivers it. Its fields are set on the main thread before the chain
+     * starts and read by the steps of the chain, one after the other.
+     */
+    private final class Attempt implements Callable<AuthCredential>,
+            SuccessContinuation<AuthCredential, UserSnapshot>, Continuation<UserSnapshot, Object>,
+            OnCompleteListener<Object> {
+
+        CancellationTokenSource mCancellation;
+        AuthBackend mBackend;
+        CredentialFactory mFactory;
+        String mId;
+        String mSecret;
+        AuthTrace.Flow mTrace;
+        // Time spent unpacking the result on the main thread, baseline runs only
+        long mUnpackNs;
+
+        @Override
+        public AuthCredential call() {
+            if (mTrace != null) {
+                mTrace.beginSection("get_credential");
+            }
+            AuthCredential credential = mFactory.create(mId, mSecret);
+            if (mTrace != null) {
+                mTrace.endSection();
+            }
+            return credential;
+        }
+
+        @NonNull
+        @Override
+        public Task<UserSnapshot> then(AuthCredential credential) {
+            return mBackend.signInWithCredential(credential, mCancellation.getToken());
+        }
+
+        @Override
+        public Object then(@NonNull Task<UserSnapshot> task) {
+            long start = System.nanoTime();
+            Object result;
+            if (task.isCanceled()) {
+                result = null;
+            } else if (task.isSuccessful()) {
+                result = task.getResult();
+            } else {
+                AuthError error = AuthErrorClassifier.classify(task.getException());
+                AuthLog.w(TAG, "onComplete: signIn -> " + error, task.getException());
+                result = error;
+            }
+            mUnpackNs = Looper.myLooper() == Looper.getMainLooper() ? System.nanoTime() - start : 0;
+            return result;
+        }
+
+        @Override
+        public void onComplete(@NonNull Task<Object> task) {
+            mPending.remove(this);
+            Object result = task.isSuccessful() ? task.getResult() : null;
+            long unpackNs = mUnpackNs;
+            // Nothing of the attempt is referenced any more, the next one can take it
+            mCancellation = null;
+            mBackend = null;
+            mFactory = null;
+            mId = null;
+            mSecret = null;
+            mTrace = null;
+            mUnpackNs = 0;
+            mSpare = this;
+            deliver(result, unpackNs);
+        }
+    }
+}
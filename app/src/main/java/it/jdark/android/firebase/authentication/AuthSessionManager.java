@@ -0,0 +1,126 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide view of the authentication state.
+ * <p>
+ * The manager registers a single listener on the {@link AuthBackend} for the whole process,
+ * keeps a {@link UserSnapshot} of the signed in user and fans the changes out to the
+ * registered {@link Observer}s on the main thread. Screens register in onStart and unregister
+ * in onStop: registering only hands back the cached snapshot, it never queries the backend.
+ * <p>
+ * The snapshot is also kept on disk by a {@link ProfileCache}. A new process starts from the
+ * user stored there, so the screens show the last signed in user on their first frame, and
+ * the first callback of the backend reconciles it with the actual state.
+ */
+public final class AuthSessionManager implements AuthBackend.StateListener {
+
+    public interface Observer {
+        void onSessionChanged(@Nullable UserSnapshot user);
+    }
+
+    private static final String TAG = "AuthSessionManager";
+
+    private static AuthSessionManager sInstance;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Observer> mObservers = new CopyOnWriteArrayList<>();
+
+    private final ProfileCache mProfileCache;
+    private final IdTokenManager mIdTokenManager;
+
+    private volatile UserSnapshot mUser;
+
+    public static synchronized AuthSessionManager getInstance(Context context) {
+        if (sInstance == null) {
+            AuthBackend backend = AuthBackends.get();
+            sInstance = new AuthSessionManager(backend,
+                    new ProfileCache(context.getApplicationContext()),
+                    new IdTokenManager(backend, AuthExecutors.scheduler(), Clock.SYSTEM));
+        }
+        return sInstance;
+    }
+
+    private AuthSessionManager(AuthBackend backend, ProfileCache profileCache, IdTokenManager idTokenManager) {
+        mProfileCache = profileCache;
+        mIdTokenManager = idTokenManager;
+        mUser = profileCache.read();
+        if (mUser == null) {
+            mUser = backend.getCurrentUser();
+            if (mUser != null) {
+                profileCache.write(mUser);
+            }
+        }
+        backend.addStateListener(this);
+    }
+
+    /**
+     * Last known user, or null when signed out.
+     */
+    @Nullable
+    public UserSnapshot getUser() {
+        return mUser;
+    }
+
+    /**
+     * The ID token of the signed in user, kept for as long as the session.
+     */
+    public IdTokenManager getIdTokenManager() {
+        return mIdTokenManager;
+    }
+
+    /**
+     * Registers the observer and immediately delivers the cached snapshot to it.
+     */
+    @MainThread
+    public void addObserver(@NonNull Observer observer) {
+        if (mObservers.addIfAbsent(observer)) {
+            observer.onSessionChanged(mUser);
+        }
+    }
+
+    @MainThread
+    public void removeObserver(@NonNull Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    @Override
+    public void onUserChanged(@Nullable UserSnapshot user) {
+        publish(user);
+    }
+
+    /**
+     * Replaces the cached snapshot and notifies the observers if it actually changed.
+     */
+    public void publish(@Nullable final UserSnapshot user) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    publish(user);
+                }
+            });
+            return;
+        }
+
+        UserSnapshot previous = mUser;
+        if (previous == null ? user == null : previous.equals(user)) {
+            return;
+        }
+        mUser = user;
+        mProfileCache.write(user);
+        AuthLog.d(TAG, "publish: " + (user != null ? "signed_in -> " + user.getUid() : "signed_out"));
+
+        for (Observer observer : mObservers) {
+            observer.onSessionChanged(user);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+/**
+ * Helpers around the {@link Task} API shared by the backends.
+ */
+final class AuthTasks {
+
+    // Runs the listener on the thread completing the task, for listeners that only forward it
+    static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private AuthTasks() {
+    }
+
+    /**
+     * Returns a task completing with the given one, or cancelled as soon as the token is.
+     * <p>
+     * Cancelling does not stop the work behind the task, it detaches the caller from it: the
+     * listeners and continuations added to the returned task run right away, as cancelled,
+     * instead of waiting for the result.
+     * <p>
+     * The token keeps a listener until it is cancelled or unreachable, it should be scoped to
+     * one attempt (see {@link AuthResultDispatcher#getCancellationToken()}) rather than live as
+     * long as a screen.
+     */
+    static <T> Task<T> cancellable(Task<T> task, CancellationToken token) {
+        if (token.isCancellationRequested()) {
+            return Tasks.forCanceled();
+        }
+        final TaskCompletionSource<T> source = new TaskCompletionSource<>(token);
+        task.addOnCompleteListener(DIRECT, new OnCompleteListener<T>() {
+            @Override
+            public void onComplete(@NonNull Task<T> task) {
+                if (task.isSuccessful()) {
+                    source.trySetResult(task.getResult());
+                } else if (task.getException() != null) {
+                    source.trySetException(task.getException());
+                } else {
+                    source.trySetException(new CancellationException("Task cancelled"));
+                }
+            }
+        });
+        return source.getTask();
+    }
+}
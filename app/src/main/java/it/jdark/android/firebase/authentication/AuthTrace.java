@@ -0,0 +1,242 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.annotation.NonNull;
+import android.support.v4.os.TraceCompat;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-stage latency of the sign-in flows.
+ * <p>
+ * A screen starts a {@link Flow} when the user asks to sign in and marks every stage as it
+ * completes ({@code intent_launch}, {@code activity_result}, {@code sign_in_with_credential},
+ * {@code first_update_ui}, ...). The time since the previous mark is recorded in a histogram
+ * named {@code <provider>.<stage>}, the whole flow in {@code <provider>.total}. Stages that
+ * run synchronously can be wrapped in {@link Flow#beginSection(String)} and
+ * {@link Flow#endSection()}, which also open a trace section {@code Auth.<provider>.<stage>}
+ * visible in systrace/perfetto; the wait before the section, such as the hop to a background
+ * thread, is recorded as {@code <provider>.<stage>.wait}. The stages of a flow add up to its
+ * total.
+ * <p>
+ * The histograms live in memory for the lifetime of the process and are exported as JSON by
+ * {@link #dump(PrintWriter)}, see ChooserActivity#dump:
+ * <pre>
+ * adb shell dumpsys activity it.jdark.android.firebase.authentication/.ChooserActivity auth-trace
+ * </pre>
+ */
+public final class AuthTrace {
+
+    private static final String TAG = "AuthTrace";
+
+    private static final Map<String, Histogram> sHistograms = new TreeMap<>();
+    private static final Map<String, Long> sCounters = new TreeMap<>();
+
+    private AuthTrace() {
+    }
+
+    /**
+     * Starts timing a sign-in flow of the provider.
+     */
+    public static Flow start(String provider) {
+        return new Flow(provider);
+    }
+
+    /**
+     * Increments the counter with the given name, exported along with the histograms.
+     */
+    public static void count(String name) {
+        synchronized (sHistograms) {
+            Long value = sCounters.get(name);
+            sCounters.put(name, value == null ? 1 : value + 1);
+        }
+    }
+
+    static void record(String name, long durationNs) {
+        synchronized (sHistograms) {
+            Histogram histogram = sHistograms.get(name);
+            if (histogram == null) {
+                histogram = new Histogram();
+                sHistograms.put(name, histogram);
+            }
+            histogram.add(durationNs);
+        }
+        AuthLog.d(TAG, name + " " + (durationNs / 1000000) + " ms");
+    }
+
+    /**
+     * Writes the histograms and counters recorded so far as a single JSON object.
+     */
+    public static void dump(PrintWriter writer) {
+        JSONObject root = new JSONObject();
+        try {
+            JSONObject stages = new JSONObject();
+            JSONObject counters = new JSONObject();
+            synchronized (sHistograms) {
+                for (Map.Entry<String, Histogram> entry : sHistograms.entrySet()) {
+                    stages.put(entry.getKey(), entry.getValue().toJson());
+                }
+                for (Map.Entry<String, Long> entry : sCounters.entrySet()) {
+                    counters.put(entry.getKey(), entry.getValue());
+                }
+            }
+            root.put("stages", stages);
+            root.put("counters", counters);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        writer.println(root.toString());
+        writer.flush();
+    }
+
+    static void reset() {
+        synchronized (sHistograms) {
+            sHistograms.clear();
+            sCounters.clear();
+        }
+    }
+
+    /**
+     * One sign-in attempt, from the user's request to the first update of the screen.
+     */
+    public static final class Flow {
+
+        private final String mProvider;
+        private final long mStart;
+        private long mLastMark;
+        private String mSection;
+        private boolean mEnded;
+
+        private Flow(String provider) {
+            mProvider = provider;
+            mStart = System.nanoTime();
+            mLastMark = mStart;
+        }
+
+        /**
+         * Records the time elapsed since the previous stage (or the start) as the given stage.
+         */
+        public void stage(@NonNull String stage) {
+            if (mEnded) {
+                return;
+            }
+            long now = System.nanoTime();
+            record(mProvider + '.' + stage, now - mLastMark);
+            mLastMark = now;
+        }
+
+        /**
+         * Starts a synchronous stage on the current thread, ended by {@link #endSection()}.
+         * The time since the previous stage is recorded as {@code <stage>.wait}.
+         */
+        public void beginSection(@NonNull String stage) {
+            stage(stage + ".wait");
+            mSection = stage;
+            TraceCompat.beginSection("Auth." + mProvider + '.' + stage);
+        }
+
+        public void endSection() {
+            TraceCompat.endSection();
+            stage(mSection);
+            mSection = null;
+        }
+
+        /**
+         * Records the last stage and the duration of the whole flow.
+         */
+        public void end(@NonNull String stage) {
+            if (mEnded) {
+                return;
+            }
+            stage(stage);
+            record(mProvider + ".total", mLastMark - mStart);
+            mEnded = true;
+        }
+
+        /**
+         * Ends the flow once the next frame of the view has been drawn, after the updates
+         * posted by its {@link AuthUiRenderer}.
+         */
+        public void endOnNextFrame(View view, @NonNull final String stage) {
+            ViewCompat.postOnAnimation(view, new Runnable() {
+                @Override
+                public void run() {
+                    end(stage);
+                }
+            });
+        }
+
+        /**
+         * Records the stage that failed and ends the flow without a total.
+         */
+        public void fail(@NonNull String stage) {
+            if (mEnded) {
+                return;
+            }
+            stage(stage + ".failed");
+            count(mProvider + ".failures");
+            mEnded = true;
+        }
+    }
+
+    /**
+     * Log2 histogram of durations: bucket 0 counts the durations under 1 ms, bucket i the
+     * ones in [2^(i-1), 2^i) ms, the last one everything above.
+     */
+    private static final class Histogram {
+
+        private static final int BUCKETS = 18;
+
+        private final long[] mBuckets = new long[BUCKETS];
+        private long mCount;
+        private long mSumNs;
+        private long mMinNs = Long.MAX_VALUE;
+        private long mMaxNs;
+
+        void add(long durationNs) {
+            long ms = durationNs / 1000000;
+            int bucket = ms == 0 ? 0 : 64 - Long.numberOfLeadingZeros(ms);
+            mBuckets[Math.min(bucket, BUCKETS - 1)]++;
+            mCount++;
+            mSumNs += durationNs;
+            mMinNs = Math.min(mMinNs, durationNs);
+            mMaxNs = Math.max(mMaxNs, durationNs);
+        }
+
+        // Upper bound of the bucket holding the given percentile, in ms
+        private long percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * mCount);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return i == BUCKETS - 1 ? mMaxNs / 1000000 : 1L << i;
+                }
+            }
+            return mMaxNs / 1000000;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONArray buckets = new JSONArray();
+            for (long bucket : mBuckets) {
+                buckets.put(bucket);
+            }
+            return new JSONObject()
+                    .put("count", mCount)
+                    .put("min_ms", mMinNs / 1000000.0)
+                    .put("mean_ms", mSumNs / 1000000.0 / mCount)
+                    .put("max_ms", mMaxNs / 1000000.0)
+                    .put("p50_ms", percentile(0.5))
+                    .put("p90_ms", percentile(0.9))
+                    .put("p99_ms", percentile(0.99))
+                    .put("buckets", buckets);
+        }
+    }
+}
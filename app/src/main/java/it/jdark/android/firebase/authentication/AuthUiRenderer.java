@@ -0,0 +1,157 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.view.ViewCompat;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * Applies {@link AuthUiState}s to the views of a sign-in screen.
+ * <p>
+ * A sign-out usually produces more than one update in a row (the explicit one of the screen,
+ * the session change, sometimes a failed result), so the states handed to
+ * {@link #render(AuthUiState)} are not applied right away: the last one of the frame is
+ * applied on the next animation step, and only the views whose value differ from the state
+ * already on screen are touched. The first state is applied immediately, so the screen never
+ * draws its layout defaults.
+ */
+public final class AuthUiRenderer implements Runnable {
+
+    private final TextView mStatus;
+    private final TextView mDetail;
+    private final View[] mSignedInViews;
+    private final View[] mSignedOutViews;
+    private final View[] mGoneWhenSignedIn;
+    private final View mVerifyButton;
+
+    private AuthUiState mApplied;
+    private AuthUiState mPending;
+
+    private AuthUiRenderer(Builder builder) {
+        mStatus = builder.mStatus;
+        mDetail = builder.mDetail;
+        mSignedInViews = builder.mSignedInViews;
+        mSignedOutViews = builder.mSignedOutViews;
+        mGoneWhenSignedIn = builder.mGoneWhenSignedIn;
+        mVerifyButton = builder.mVerifyButton;
+    }
+
+    /**
+     * Schedules the state to be applied, replacing the one still pending if any.
+     */
+    @MainThread
+    public void render(@NonNull AuthUiState state) {
+        if (mApplied == null) {
+            apply(state);
+            return;
+        }
+        boolean scheduled = mPending != null;
+        mPending = state;
+        if (!scheduled) {
+            ViewCompat.postOnAnimation(mStatus, this);
+        }
+    }
+
+    @Nullable
+    public AuthUiState getState() {
+        return mPending != null ? mPending : mApplied;
+    }
+
+    @Override
+    public void run() {
+        AuthUiState state = mPending;
+        mPending = null;
+        if (state != null) {
+            apply(state);
+        }
+    }
+
+    private void apply(AuthUiState state) {
+        AuthUiState applied = mApplied;
+        if (state.equals(applied)) {
+            return;
+        }
+        mApplied = state;
+
+        if (applied == null || !TextUtils.equals(applied.getStatus(), state.getStatus())) {
+            mStatus.setText(state.getStatus());
+        }
+        if (applied == null || !TextUtils.equals(applied.getDetail(), state.getDetail())) {
+            mDetail.setText(state.getDetail());
+        }
+        if (applied == null || applied.isSignedIn() != state.isSignedIn()) {
+            boolean signedIn = state.isSignedIn();
+            setVisibility(mSignedInViews, signedIn ? View.VISIBLE : View.GONE);
+            setVisibility(mSignedOutViews, signedIn ? View.GONE : View.VISIBLE);
+            if (signedIn) {
+                setVisibility(mGoneWhenSignedIn, View.GONE);
+            }
+        }
+        if (mVerifyButton != null
+                && (applied == null || applied.isVerifyEnabled() != state.isVerifyEnabled())) {
+            mVerifyButton.setEnabled(state.isVerifyEnabled());
+        }
+    }
+
+    private static void setVisibility(View[] views, int visibility) {
+        for (View view : views) {
+            view.setVisibility(visibility);
+        }
+    }
+
+    public static final class Builder {
+
+        private static final View[] NO_VIEWS = new View[0];
+
+        private final TextView mStatus;
+        private final TextView mDetail;
+        private View[] mSignedInViews = NO_VIEWS;
+        private View[] mSignedOutViews = NO_VIEWS;
+        private View[] mGoneWhenSignedIn = NO_VIEWS;
+        private View mVerifyButton;
+
+        public Builder(@NonNull TextView status, @NonNull TextView detail) {
+            mStatus = status;
+            mDetail = detail;
+        }
+
+        /**
+         * Views shown only while signed in.
+         */
+        public Builder signedInViews(View... views) {
+            mSignedInViews = views;
+            return this;
+        }
+
+        /**
+         * Views shown only while signed out.
+         */
+        public Builder signedOutViews(View... views) {
+            mSignedOutViews = views;
+            return this;
+        }
+
+        /**
+         * Views hidden when signing in, whose visibility is otherwise up to the screen.
+         */
+        public Builder goneWhenSignedIn(View... views) {
+            mGoneWhenSignedIn = views;
+            return this;
+        }
+
+        /**
+         * View enabled according to {@link AuthUiState#isVerifyEnabled()}.
+         */
+        public Builder verifyButton(View view) {
+            mVerifyButton = view;
+            return this;
+        }
+
+        public AuthUiRenderer build() {
+            return new AuthUiRenderer(this);
+        }
+    }
+}
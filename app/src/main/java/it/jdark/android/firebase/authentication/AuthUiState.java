@@ -0,0 +1,86 @@
+package it.jdark.android.firebase.authentication;
+
+import android.text.TextUtils;
+
+/**
+ * Immutable description of what a sign-in screen shows: whether the signed in or the signed
+ * out layout is visible, the status and detail texts and, for the screens that have one,
+ * whether the verify action is enabled.
+ * <p>
+ * Screens build a state on every update and hand it to their {@link AuthUiRenderer}, which
+ * compares it to the one on screen and only touches the views that differ.
+ */
+public final class AuthUiState {
+
+    private final boolean mSignedIn;
+    private final CharSequence mStatus;
+    private final CharSequence mDetail;
+    private final boolean mVerifyEnabled;
+
+    private AuthUiState(boolean signedIn, CharSequence status, CharSequence detail,
+                        boolean verifyEnabled) {
+        mSignedIn = signedIn;
+        mStatus = status;
+        mDetail = detail;
+        mVerifyEnabled = verifyEnabled;
+    }
+
+    public static AuthUiState signedIn(CharSequence status, CharSequence detail) {
+        return new AuthUiState(true, status, detail, true);
+    }
+
+    public static AuthUiState signedOut(CharSequence status, CharSequence detail) {
+        return new AuthUiState(false, status, detail, true);
+    }
+
+    public AuthUiState withVerifyEnabled(boolean verifyEnabled) {
+        return verifyEnabled == mVerifyEnabled
+                ? this
+                : new AuthUiState(mSignedIn, mStatus, mDetail, verifyEnabled);
+    }
+
+    public boolean isSignedIn() {
+        return mSignedIn;
+    }
+
+    public CharSequence getStatus() {
+        return mStatus;
+    }
+
+    public CharSequence getDetail() {
+        return mDetail;
+    }
+
+    public boolean isVerifyEnabled() {
+        return mVerifyEnabled;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AuthUiState)) {
+            return false;
+        }
+        AuthUiState other = (AuthUiState) o;
+        return mSignedIn == other.mSignedIn
+                && mVerifyEnabled == other.mVerifyEnabled
+                && TextUtils.equals(mStatus, other.mStatus)
+                && TextUtils.equals(mDetail, other.mDetail);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mSignedIn ? 1 : 0;
+        result = 31 * result + (mStatus != null ? mStatus.toString().hashCode() : 0);
+        result = 31 * result + (mDetail != null ? mDetail.toString().hashCode() : 0);
+        result = 31 * result + (mVerifyEnabled ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "AuthUiState{signedIn=" + mSignedIn + ", verifyEnabled=" + mVerifyEnabled + "}";
+    }
+}
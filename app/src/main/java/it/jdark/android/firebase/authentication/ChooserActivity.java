@@ -1,92 +1,261 @@
 package it.jdark.android.firebase.authentication;
 
-import android.content.Context;
 import android.content.Intent;
+import android.content.IntentSender;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
-import android.view.LayoutInflater;
-import android.view.View;
-import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
-import android.widget.TextView;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+import android.widget.Toast;
 
+import com.google.android.play.core.splitinstall.SplitInstallManager;
+import com.google.android.play.core.splitinstall.SplitInstallManagerFactory;
+import com.google.android.play.core.splitinstall.SplitInstallRequest;
+import com.google.android.play.core.splitinstall.SplitInstallSessionState;
+import com.google.android.play.core.splitinstall.SplitInstallStateUpdatedListener;
+import com.google.android.play.core.splitinstall.model.SplitInstallSessionStatus;
+import com.google.android.play.core.tasks.OnFailureListener;
+import com.google.android.play.core.tasks.OnSuccessListener;
 
-public class ChooserActivity extends AppCompatActivity implements AdapterView.OnItemClickListener {
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.List;
+
+
+public class ChooserActivity extends AppCompatActivity implements ProviderAdapter.OnEntryClickListener,
+        SplitInstallStateUpdatedListener {
 
     //TODO Replace ids and Fabris key from "gradle.properties" (local) before run
 
-    private static final Class[] CLASSES = new Class[]{
-            EmailPasswordActivity.class,
-            GoogleSigninActivity.class,
-            FirebaseUIActivity.class,
-            FacebookActivity.class,
-            TwitterActivity.class,
-            PhoneActivity.class
-    };
-
-    private static final int[] DESCRIPTION_IDS = new int[] {
-            R.string.desc_email_and_passwd,
-            R.string.desc_google_signin,
-            R.string.desc_firebase_ui,
-            R.string.desc_facebook,
-            R.string.desc_twitter,
-            R.string.desc_phone
-    };
+    private static final String TAG = "ChooserActivity";
+
+    private static final int RC_CONFIRM_INSTALL = 9101;
+
+    private static final String STATE_PENDING_SCREEN = "chooser.pending_screen";
+    private static final String STATE_PENDING_SESSION = "chooser.pending_session";
+    // Session id not known yet, 0 is the id of an install with nothing to download
+    private static final int NO_SESSION = -1;
+
+    private SplitInstallManager mSplitInstallManager;
+    // Screen opened once its module is installed by the session with the given id
+    private ProviderCatalog.Entry mPendingScreen;
+    private int mPendingSessionId = NO_SESSION;
+    // Updates received before startInstall returned the id of the pending session
+    private final SparseArray<SplitInstallSessionState> mEarlyStates = new SparseArray<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_chooser);
 
-        ListView listView = (ListView) findViewById(R.id.mainListView);
-        MyArrayAdapter adapter = new MyArrayAdapter(this, android.R.layout.simple_list_item_2, CLASSES);
-        adapter.setDescriptionIds(DESCRIPTION_IDS);
+        mSplitInstallManager = SplitInstallManagerFactory.create(this);
 
+        RecyclerView listView = (RecyclerView) findViewById(R.id.mainListView);
+        listView.setHasFixedSize(true);
+        ProviderAdapter adapter = new ProviderAdapter(this);
         listView.setAdapter(adapter);
-        listView.setOnItemClickListener(this);
+        final ProviderCatalog catalog = ProviderCatalog.getInstance(this);
+        adapter.submit(catalog.getEntries());
 
+        if (savedInstanceState != null) {
+            String key = savedInstanceState.getString(STATE_PENDING_SCREEN);
+            for (ProviderCatalog.Entry entry : catalog.getEntries()) {
+                if (entry.getKey().equals(key)) {
+                    mPendingScreen = entry;
+                    mPendingSessionId = savedInstanceState.getInt(STATE_PENDING_SESSION, NO_SESSION);
+                }
+            }
+        }
+        // For the whole life of the screen: the install confirmation pauses it, the updates
+        // sent meanwhile must not be lost
+        mSplitInstallManager.registerListener(this);
+
+        // The SDKs preloaded by the catalog are started on a background thread after the
+        // first frame, so that opening their activity does not pay the initialization
+        listView.post(new Runnable() {
+            @Override
+            public void run() {
+                ProviderRegistry.getInstance(ChooserActivity.this).warmUp(catalog.getPreloadProviders());
+            }
+        });
     }
 
     @Override
-    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-        Class clicked = CLASSES[position];
-        startActivity(new Intent(this, clicked));
+    protected void onResume() {
+        super.onResume();
+        if (mPendingScreen != null) {
+            // The install may have moved on while the screen was being recreated
+            mSplitInstallManager.getSessionStates()
+                    .addOnSuccessListener(new OnSuccessListener<List<SplitInstallSessionState>>() {
+                        @Override
+                        public void onSuccess(List<SplitInstallSessionState> states) {
+                            resync(states);
+                        }
+                    });
+        }
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (mPendingScreen != null) {
+            outState.putString(STATE_PENDING_SCREEN, mPendingScreen.getKey());
+            outState.putInt(STATE_PENDING_SESSION, mPendingSessionId);
+        }
+    }
 
-    public static class MyArrayAdapter extends ArrayAdapter<Class> {
-
-        private Context mContext;
-        private Class[] mClasses;
-        private int[] mDescriptionIds;
+    @Override
+    protected void onDestroy() {
+        mSplitInstallManager.unregisterListener(this);
+        super.onDestroy();
+    }
 
-        public MyArrayAdapter(Context context, int resource, Class[] objects) {
-            super(context, resource, objects);
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == RC_CONFIRM_INSTALL && resultCode != RESULT_OK) {
+            // Download declined, the session is cancelled
+            AuthLog.d(TAG, "onActivityResult: install not confirmed");
+            clearPending();
+        }
+    }
 
-            mContext = context;
-            mClasses = objects;
+    /**
+     * {@code adb shell dumpsys activity <package>/.ChooserActivity auth-trace} prints only the
+     * {@link AuthTrace} JSON, without the argument it follows the regular activity dump.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args == null || args.length == 0 || !"auth-trace".equals(args[0])) {
+            super.dump(prefix, fd, writer, args);
+            writer.print(prefix);
+            writer.println("AuthTrace:");
+            writer.print(prefix);
         }
+        AuthTrace.dump(writer);
+    }
 
-        @Override
-        public View getView(int position, View convertView, ViewGroup parent) {
-            View view = convertView;
+    @Override
+    public void onEntryClick(final ProviderCatalog.Entry clicked) {
+        if (clicked.getModule() == null
+                || mSplitInstallManager.getInstalledModules().contains(clicked.getModule())) {
+            open(clicked);
+            return;
+        }
 
-            if (convertView == null) {
-                LayoutInflater inflater = (LayoutInflater) mContext.getSystemService(LAYOUT_INFLATER_SERVICE);
-                view = inflater.inflate(android.R.layout.simple_list_item_2, null);
-            }
+        mPendingScreen = clicked;
+        mPendingSessionId = NO_SESSION;
+        Toast.makeText(this, getString(R.string.module_install_progress_form, clicked.getTitle()),
+                Toast.LENGTH_SHORT).show();
+        SplitInstallRequest request = SplitInstallRequest.newBuilder()
+                .addModule(clicked.getModule())
+                .build();
+        mSplitInstallManager.startInstall(request)
+                .addOnSuccessListener(new OnSuccessListener<Integer>() {
+                    @Override
+                    public void onSuccess(Integer sessionId) {
+                        onInstallStarted(clicked, sessionId);
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(Exception e) {
+                        AuthLog.w(TAG, "startInstall: " + clicked.getModule() + " failed", e);
+                        if (mPendingScreen == clicked) {
+                            onInstallFailed(clicked);
+                        }
+                    }
+                });
+    }
 
-            ((TextView) view.findViewById(android.R.id.text1)).setText(mClasses[position].getSimpleName());
-            ((TextView) view.findViewById(android.R.id.text2)).setText(mDescriptionIds[position]);
+    private void onInstallStarted(ProviderCatalog.Entry screen, int sessionId) {
+        if (mPendingScreen != screen) {
+            return;
+        }
+        mPendingSessionId = sessionId;
+        SplitInstallSessionState early = mEarlyStates.get(sessionId);
+        mEarlyStates.clear();
+        if (sessionId == 0) {
+            // Installed in the meantime, no session was needed
+            clearPending();
+            open(screen);
+        } else if (early != null) {
+            onStateUpdate(early);
+        }
+    }
 
-            return view;
+    // Catches up with the pending session from the states of all the sessions
+    private void resync(List<SplitInstallSessionState> states) {
+        if (mPendingScreen == null) {
+            return;
+        }
+        for (SplitInstallSessionState state : states) {
+            if (mPendingSessionId == NO_SESSION
+                    ? state.moduleNames().contains(mPendingScreen.getModule())
+                    : state.sessionId() == mPendingSessionId) {
+                mPendingSessionId = state.sessionId();
+                onStateUpdate(state);
+                return;
+            }
+        }
+        if (mSplitInstallManager.getInstalledModules().contains(mPendingScreen.getModule())) {
+            ProviderCatalog.Entry screen = mPendingScreen;
+            clearPending();
+            open(screen);
         }
+    }
 
-        public void setDescriptionIds(int[] descriptionIds) {
-            mDescriptionIds = descriptionIds;
+    @Override
+    public void onStateUpdate(SplitInstallSessionState state) {
+        if (mPendingScreen == null) {
+            return;
+        }
+        if (mPendingSessionId == NO_SESSION) {
+            mEarlyStates.put(state.sessionId(), state);
+            return;
+        }
+        if (state.sessionId() != mPendingSessionId) {
+            return;
+        }
+        switch (state.status()) {
+            case SplitInstallSessionStatus.REQUIRES_USER_CONFIRMATION:
+                // Large downloads must be confirmed by the user
+                try {
+                    startIntentSenderForResult(state.resolutionIntent().getIntentSender(),
+                            RC_CONFIRM_INSTALL, null, 0, 0, 0);
+                } catch (IntentSender.SendIntentException e) {
+                    AuthLog.w(TAG, "onStateUpdate: confirmation failed", e);
+                    onInstallFailed(mPendingScreen);
+                }
+                break;
+            case SplitInstallSessionStatus.INSTALLED:
+                ProviderCatalog.Entry screen = mPendingScreen;
+                clearPending();
+                open(screen);
+                break;
+            case SplitInstallSessionStatus.FAILED:
+                AuthLog.w(TAG, "onStateUpdate: install failed, error " + state.errorCode());
+                onInstallFailed(mPendingScreen);
+                break;
+            case SplitInstallSessionStatus.CANCELED:
+                clearPending();
+                break;
         }
     }
 
+    private void clearPending() {
+        mPendingScreen = null;
+        mPendingSessionId = NO_SESSION;
+        mEarlyStates.clear();
+    }
+
+    private void onInstallFailed(ProviderCatalog.Entry screen) {
+        clearPending();
+        Toast.makeText(this, getString(R.string.module_install_failed_form, screen.getTitle()),
+                Toast.LENGTH_SHORT).show();
+    }
+
+    private void open(ProviderCatalog.Entry screen) {
+        startActivity(new Intent().setClassName(this, screen.getClassName()));
+    }
 }
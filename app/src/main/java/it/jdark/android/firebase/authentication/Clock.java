@@ -0,0 +1,17 @@
+package it.jdark.android.firebase.authentication;
+
+/**
+ * Source of the wall clock time of the code keeping state across process restarts, so that
+ * the tests can move it.
+ */
+public interface Clock {
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    long currentTimeMillis();
+}
@@ -0,0 +1,271 @@
+package it.jdark.android.firebase.authentication;
+
+import android.app.Activity;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.OnCanceledListener;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.auth.AuthCredential;
+import com.google.firebase.auth.PhoneAuthProvider;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link AuthBackend} decorator that joins duplicate email/password requests to the one
+ * already in flight.
+ * <p>
+ * Requests are keyed by operation, email and password, through a SHA-256 fingerprint salted
+ * per instance, so no password stays in memory after its request. While a request is pending,
+ * an identical one attaches to its task instead of reaching the delegate, so a double tap
+ * costs a single round trip. The shared request is cancelled only once every caller attached
+ * to it has cancelled, and forgotten as soon as it completes or is cancelled.
+ * <p>
+ * Credential sign-ins and phone verifications go straight to the delegate: a credential
+ * doesn't expose what it was built from (a phone credential hides its verification id), so
+ * two of them can't be told apart, and Firebase already shares a pending verification of a
+ * number between its callers in the process. The screens keep a single credential sign-in in
+ * flight instead, see {@link AuthResultDispatcher#isPending()}.
+ * <p>
+ * {@link #getStartedCount()} counts the requests of every kind that went to the delegate,
+ * {@link #getCoalescedCount()} the email/password requests that were joined, also exported
+ * as the {@link AuthTrace} counters {@code backend.started} and {@code backend.coalesced}.
+ * All calls are thread safe.
+ */
+public final class CoalescingAuthBackend implements AuthBackend {
+
+    private static final String TAG = "CoalescingAuthBackend";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final AuthBackend mDelegate;
+    private final byte[] mSalt = new byte[16];
+
+    // Guarded by this
+    private final Map<String, InFlight> mInFlight = new HashMap<>();
+
+    private final AtomicLong mStarted = new AtomicLong();
+    private final AtomicLong mCoalesced = new AtomicLong();
+
+    public CoalescingAuthBackend(AuthBackend delegate) {
+        mDelegate = delegate;
+        new SecureRandom().nextBytes(mSalt);
+    }
+
+    public long getStartedCount() {
+        return mStarted.get();
+    }
+
+    /**
+     * Email/password requests joined to a pending one, the only kind that is coalesced.
+     */
+    public long getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    @Nullable
+    @Override
+    public UserSnapshot getCurrentUser() {
+        return mDelegate.getCurrentUser();
+    }
+
+    @Override
+    public void addStateListener(@NonNull StateListener listener) {
+        mDelegate.addStateListener(listener);
+    }
+
+    @Override
+    public void removeStateListener(@NonNull StateListener listener) {
+        mDelegate.removeStateListener(listener);
+    }
+
+    @Override
+    public Task<UserSnapshot> signInWithEmailAndPassword(final String email, final String password,
+                                                         @NonNull CancellationToken cancellation) {
+        return join(fingerprint("signIn", email, password), cancellation, new Request() {
+            @Override
+            public Task<UserSnapshot> start(CancellationToken token) {
+                return mDelegate.signInWithEmailAndPassword(email, password, token);
+            }
+        });
+    }
+
+    @Override
+    public Task<UserSnapshot> createUserWithEmailAndPassword(final String email, final String password,
+                                                             @NonNull CancellationToken cancellation) {
+        return join(fingerprint("create", email, password), cancellation, new Request() {
+            @Override
+            public Task<UserSnapshot> start(CancellationToken token) {
+                return mDelegate.createUserWithEmailAndPassword(email, password, token);
+            }
+        });
+    }
+
+    @Override
+    public Task<UserSnapshot> signInWithCredential(AuthCredential credential,
+                                                   @NonNull CancellationToken cancellation) {
+        started();
+        return mDelegate.signInWithCredential(credential, cancellation);
+    }
+
+    @Override
+    public Task<Void> sendEmailVerification() {
+        return mDelegate.sendEmailVerification();
+    }
+
+    @Override
+    public Task<IdToken> getIdToken(boolean forceRefresh) {
+        // Firebase already shares a pending token request between its callers
+        return mDelegate.getIdToken(forceRefresh);
+    }
+
+    @Override
+    public void verifyPhoneNumber(String phoneNumber, long timeout, TimeUnit unit, Activity activity,
+                                  PhoneAuthProvider.OnVerificationStateChangedCallbacks callbacks,
+                                  @Nullable PhoneAuthProvider.ForceResendingToken token) {
+        started();
+        mDelegate.verifyPhoneNumber(phoneNumber, timeout, unit, activity, callbacks, token);
+    }
+
+    @Override
+    public void signOut() {
+        mDelegate.signOut();
+    }
+
+    private void started() {
+        mStarted.incrementAndGet();
+        AuthTrace.count("backend.started");
+    }
+
+    private String fingerprint(String operation, String email, String password) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Required on every Android version
+            throw new IllegalStateException(e);
+        }
+        digest.update(mSalt);
+        // Separators that can't be part of an operation or an email
+        digest.update((operation + '\n' + email + '\n').getBytes(UTF_8));
+        digest.update(password.getBytes(UTF_8));
+        byte[] hash = digest.digest();
+        StringBuilder key = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    private interface Request {
+        Task<UserSnapshot> start(CancellationToken token);
+    }
+
+    private Task<UserSnapshot> join(final String key, CancellationToken cancellation, Request request) {
+        final InFlight inFlight;
+        final boolean start;
+        synchronized (this) {
+            InFlight pending = mInFlight.get(key);
+            start = pending == null;
+            if (start) {
+                inFlight = new InFlight(key);
+                mInFlight.put(key, inFlight);
+            } else {
+                inFlight = pending;
+                inFlight.mCallers++;
+            }
+        }
+
+        if (start) {
+            started();
+            Task<UserSnapshot> task;
+            try {
+                task = request.start(inFlight.mCancellation.getToken());
+            } catch (RuntimeException e) {
+                inFlight.complete(null, e);
+                throw e;
+            }
+            task.addOnCompleteListener(AuthTasks.DIRECT, inFlight);
+        } else {
+            mCoalesced.incrementAndGet();
+            AuthTrace.count("backend.coalesced");
+            AuthLog.d(TAG, "join: attached to pending request, coalesced=" + mCoalesced.get());
+        }
+
+        Task<UserSnapshot> result = AuthTasks.cancellable(inFlight.mResult.getTask(), cancellation);
+        // One listener per caller, on its own task, gone with it
+        result.addOnCanceledListener(AuthTasks.DIRECT, new OnCanceledListener() {
+            @Override
+            public void onCanceled() {
+                inFlight.release();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * A request shared by the callers with the same key. Its task is created with the entry,
+     * under the lock, and completed by the delegate's one, so a caller joining the entry
+     * always finds it.
+     */
+    private final class InFlight implements OnCompleteListener<UserSnapshot> {
+        final String mKey;
+        final CancellationTokenSource mCancellation = new CancellationTokenSource();
+        final TaskCompletionSource<UserSnapshot> mResult = new TaskCompletionSource<>();
+        // Guarded by CoalescingAuthBackend.this
+        int mCallers = 1;
+
+        InFlight(String key) {
+            mKey = key;
+        }
+
+        void release() {
+            synchronized (CoalescingAuthBackend.this) {
+                if (--mCallers > 0) {
+                    return;
+                }
+                forget();
+            }
+            mCancellation.cancel();
+        }
+
+        @Override
+        public void onComplete(@NonNull Task<UserSnapshot> task) {
+            if (task.isSuccessful()) {
+                complete(task.getResult(), null);
+            } else {
+                complete(null, task.getException() != null
+                        ? task.getException() : new CancellationException("Task cancelled"));
+            }
+        }
+
+        void complete(@Nullable UserSnapshot user, @Nullable Exception e) {
+            // Forgotten first, a caller retrying on the result starts a new request
+            synchronized (CoalescingAuthBackend.this) {
+                forget();
+            }
+            if (e == null) {
+                mResult.trySetResult(user);
+            } else {
+                mResult.trySetException(e);
+            }
+        }
+
+        private void forget() {
+            if (mInFlight.get(mKey) == this) {
+                mInFlight.remove(mKey);
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.support.annotation.StringRes;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks the email/password form before it is sent, so requests the backend would refuse
+ * don't leave the device.
+ * <p>
+ * The checks walk the text once without allocating and can run on every keystroke:
+ * <ul>
+ * <li>the email must be an address in dot-atom form (RFC 5322), with a local part of at most
+ * 64 chars and a domain of at least two labels (RFC 1035), ASCII only;</li>
+ * <li>the password must have at least {@link #MIN_PASSWORD_LENGTH} chars, Firebase refuses
+ * shorter ones on sign up so no account can have one;</li>
+ * <li>the email domain is looked up in a {@link DomainTrie} of disposable mail providers,
+ * refused on sign up only.</li>
+ * </ul>
+ * The submitted forms are counted by {@link #onSubmit(boolean)}, also as the {@link AuthTrace}
+ * counters {@code email_form.sent} and {@code email_form.avoided}.
+ */
+public final class CredentialValidator {
+
+    public enum Result {
+        VALID(0),
+        REQUIRED(R.string.validation_required),
+        MALFORMED_EMAIL(R.string.validation_email_malformed),
+        DISPOSABLE_EMAIL(R.string.validation_email_disposable),
+        SHORT_PASSWORD(R.string.validation_password_short_form);
+
+        private final int mMessage;
+
+        Result(@StringRes int message) {
+            mMessage = message;
+        }
+
+        /**
+         * The message shown next to the field, formatted with {@link #MIN_PASSWORD_LENGTH}.
+         */
+        @StringRes
+        public int getMessage() {
+            return mMessage;
+        }
+    }
+
+    public static final int MIN_PASSWORD_LENGTH = 6;
+
+    private static final int MAX_LENGTH = 254;
+    private static final int MAX_LOCAL_LENGTH = 64;
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    private static CredentialValidator sInstance;
+
+    private final DomainTrie mDisposableDomains;
+
+    private final AtomicLong mSent = new AtomicLong();
+    private final AtomicLong mAvoided = new AtomicLong();
+
+    public static synchronized CredentialValidator getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new CredentialValidator(new DomainTrie(
+                    context.getResources().getStringArray(R.array.disposable_domains)));
+        }
+        return sInstance;
+    }
+
+    CredentialValidator(DomainTrie disposableDomains) {
+        mDisposableDomains = disposableDomains;
+    }
+
+    /**
+     * Checks an email, {@link Result#DISPOSABLE_EMAIL} only matters when creating an account.
+     */
+    public Result checkEmail(CharSequence email) {
+        int length = email.length();
+        if (length == 0) {
+            return Result.REQUIRED;
+        }
+        int at = localPartEnd(email);
+        if (at == -1 || length > MAX_LENGTH || !isDomain(email, at + 1, length)) {
+            return Result.MALFORMED_EMAIL;
+        }
+        return mDisposableDomains.matches(email, at + 1, length) ? Result.DISPOSABLE_EMAIL : Result.VALID;
+    }
+
+    public Result checkPassword(CharSequence password) {
+        int length = password.length();
+        if (length == 0) {
+            return Result.REQUIRED;
+        }
+        return length < MIN_PASSWORD_LENGTH ? Result.SHORT_PASSWORD : Result.VALID;
+    }
+
+    /**
+     * Counts a submitted form, sent to the backend or stopped by the checks.
+     */
+    public void onSubmit(boolean sent) {
+        if (sent) {
+            mSent.incrementAndGet();
+            AuthTrace.count("email_form.sent");
+        } else {
+            mAvoided.incrementAndGet();
+            AuthTrace.count("email_form.avoided");
+        }
+    }
+
+    public long getSentCount() {
+        return mSent.get();
+    }
+
+    public long getAvoidedCount() {
+        return mAvoided.get();
+    }
+
+    /**
+     * Share of the submitted forms that did not reach the backend, 0 before the first one.
+     */
+    public float getAvoidedRate() {
+        long avoided = mAvoided.get();
+        long total = avoided + mSent.get();
+        return total == 0 ? 0f : (float) avoided / total;
+    }
+
+    // Index of the '@' ending a valid dot-atom local part, -1 if there is none
+    private static int localPartEnd(CharSequence email) {
+        char previous = '.';
+        for (int i = 0; i < email.length(); i++) {
+            char c = email.charAt(i);
+            if (c == '@') {
+                return i > MAX_LOCAL_LENGTH || previous == '.' ? -1 : i;
+            }
+            if (c == '.' ? previous == '.' : !isAtext(c)) {
+                // Leading, trailing or consecutive dots, or a char needing quotes
+                return -1;
+            }
+            previous = c;
+        }
+        return -1;
+    }
+
+    private static boolean isDomain(CharSequence email, int start, int end) {
+        int labels = 0;
+        int labelStart = start;
+        boolean numeric = true;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? email.charAt(i) : '.';
+            if (c == '.') {
+                int labelLength = i - labelStart;
+                if (labelLength == 0 || labelLength > MAX_LABEL_LENGTH
+                        || email.charAt(labelStart) == '-' || email.charAt(i - 1) == '-') {
+                    return false;
+                }
+                labels++;
+                labelStart = i + 1;
+                if (i < end) {
+                    numeric = true;
+                }
+            } else if (c >= '0' && c <= '9') {
+                // Digits only, the label can't be the top level domain
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-') {
+                numeric = false;
+            } else {
+                return false;
+            }
+        }
+        return labels >= 2 && !numeric;
+    }
+
+    private static boolean isAtext(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            return true;
+        }
+        switch (c) {
+            case '!': case '#': case '$': case '%': case '&': case '\'': case '*': case '+':
+            case '-': case '/': case '=': case '?': case '^': case '_': case '`': case '{':
+            case '|': case '}': case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
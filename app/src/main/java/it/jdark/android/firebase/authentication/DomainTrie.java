@@ -0,0 +1,93 @@
+package it.jdark.android.firebase.authentication;
+
+import java.util.Arrays;
+
+/**
+ * Set of domain names matched together with their subdomains, {@code mailinator.com} matches
+ * {@code mailinator.com} and {@code eu.mailinator.com} but not {@code notmailinator.com}.
+ * <p>
+ * The names are stored reversed in a trie of parallel arrays (one char per node, first child
+ * and next sibling indexes), so a lookup walks the domain once from its end without
+ * allocating. Matching ignores ASCII case.
+ */
+final class DomainTrie {
+
+    private static final int NONE = -1;
+
+    private char[] mChars = new char[64];
+    private int[] mFirstChild = new int[64];
+    private int[] mNextSibling = new int[64];
+    private boolean[] mTerminal = new boolean[64];
+    private int mSize;
+
+    DomainTrie(String... domains) {
+        // Root node, its char is never compared
+        newNode('\0');
+        for (String domain : domains) {
+            add(domain);
+        }
+        mChars = Arrays.copyOf(mChars, mSize);
+        mFirstChild = Arrays.copyOf(mFirstChild, mSize);
+        mNextSibling = Arrays.copyOf(mNextSibling, mSize);
+        mTerminal = Arrays.copyOf(mTerminal, mSize);
+    }
+
+    /**
+     * Whether {@code text[start, end)} is one of the domains or a subdomain of one.
+     */
+    boolean matches(CharSequence text, int start, int end) {
+        int node = 0;
+        for (int i = end - 1; i >= start; i--) {
+            node = child(node, lowerCase(text.charAt(i)));
+            if (node == NONE) {
+                return false;
+            }
+            if (mTerminal[node] && (i == start || text.charAt(i - 1) == '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(String domain) {
+        int node = 0;
+        for (int i = domain.length() - 1; i >= 0; i--) {
+            char c = lowerCase(domain.charAt(i));
+            int child = child(node, c);
+            if (child == NONE) {
+                child = newNode(c);
+                mNextSibling[child] = mFirstChild[node];
+                mFirstChild[node] = child;
+            }
+            node = child;
+        }
+        mTerminal[node] = true;
+    }
+
+    private int child(int node, char c) {
+        for (int child = mFirstChild[node]; child != NONE; child = mNextSibling[child]) {
+            if (mChars[child] == c) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    private int newNode(char c) {
+        if (mSize == mChars.length) {
+            int capacity = mSize * 2;
+            mChars = Arrays.copyOf(mChars, capacity);
+            mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+            mNextSibling = Arrays.copyOf(mNextSibling, capacity);
+            mTerminal = Arrays.copyOf(mTerminal, capacity);
+        }
+        mChars[mSize] = c;
+        mFirstChild[mSize] = NONE;
+        mNextSibling[mSize] = NONE;
+        return mSize++;
+    }
+
+    private static char lowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
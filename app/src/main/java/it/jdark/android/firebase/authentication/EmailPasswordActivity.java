@@ -3,8 +3,8 @@ package it.jdark.android.firebase.authentication;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
-import android.text.TextUtils;
-import android.util.Log;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.TextView;
@@ -12,75 +12,115 @@ import android.widget.Toast;
 
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
-import com.google.firebase.auth.AuthResult;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseAuthUserCollisionException;
-import com.google.firebase.auth.FirebaseUser;
 
-public class EmailPasswordActivity extends AppCompatActivity implements View.OnClickListener {
+public class EmailPasswordActivity extends AppCompatActivity implements View.OnClickListener,
+        AuthSessionManager.Observer, AuthResultDispatcher.Callback {
 
     private final String TAG = getClass().getSimpleName();
 
-    TextView status, detail;
-    EditText email, password;
+    Views mViews;
+    AuthUiRenderer mRenderer;
+    AuthTrace.Flow mTrace;
 
-    FirebaseAuth mAuth;
-    FirebaseAuth.AuthStateListener mAuthListener;
+    AuthBackend mBackend;
+    AuthResultDispatcher mResultDispatcher;
+
+    // Checks of the form, updated on every keystroke
+    private CredentialValidator mValidator;
+    private CredentialValidator.Result mEmailCheck;
+    private CredentialValidator.Result mPasswordCheck;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_email_password);
-
         // Views
-        status = (TextView) findViewById(R.id.status);
-        detail = (TextView) findViewById(R.id.details);
-        email = (EditText) findViewById(R.id.email_input_field);
-        password = (EditText) findViewById(R.id.password_input_field);
+        mViews = new Views(findViewById(android.R.id.content));
+        mRenderer = new AuthUiRenderer.Builder(mViews.status, mViews.detail)
+                .signedInViews(mViews.signedLayout)
+                .signedOutViews(mViews.inputsLayout, mViews.signinLayout)
+                .verifyButton(mViews.verifyButton)
+                .build();
 
         // Buttons
-        findViewById(R.id.email_password_signin_btn).setOnClickListener(this);
-        findViewById(R.id.email_password_create_btn).setOnClickListener(this);
-        findViewById(R.id.email_passowrd_signout_btn).setOnClickListener(this);
-        findViewById(R.id.email_password_verify_btn).setOnClickListener(this);
-
-        mAuth = FirebaseAuth.getInstance();
-        mAuthListener = new FirebaseAuth.AuthStateListener() {
+        mViews.signInButton.setOnClickListener(this);
+        mViews.createButton.setOnClickListener(this);
+        mViews.signOutButton.setOnClickListener(this);
+        mViews.verifyButton.setOnClickListener(this);
+
+        mBackend = AuthBackends.get();
+        mResultDispatcher = new AuthResultDispatcher(this, this);
+
+        mValidator = CredentialValidator.getInstance(this);
+        mEmailCheck = mValidator.checkEmail(mViews.email.getText());
+        mPasswordCheck = mValidator.checkPassword(mViews.password.getText());
+        mViews.email.addTextChangedListener(new FieldWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+                mEmailCheck = mValidator.checkEmail(s);
+                if (mEmailCheck == CredentialValidator.Result.VALID) {
+                    mViews.email.setError(null);
+                }
+            }
+        });
+        mViews.password.addTextChangedListener(new FieldWatcher() {
             @Override
-            public void onAuthStateChanged(@NonNull FirebaseAuth firebaseAuth) {
-                FirebaseUser user = mAuth.getCurrentUser();
-                if (user != null) {
-                    updateUI(user);
-                    Log.d(TAG, "onAuthStateChanged: Signed in -> " +user.getUid());
-                } else {
-                    updateUI(null);
-                    Log.d(TAG, "onAuthStateChanged: Signed out");
+            public void afterTextChanged(Editable s) {
+                mPasswordCheck = mValidator.checkPassword(s);
+                if (mPasswordCheck == CredentialValidator.Result.VALID) {
+                    mViews.password.setError(null);
                 }
             }
-        };
+        });
     }
 
     @Override
     public void onStart() {
         super.onStart();
-        mAuth.addAuthStateListener(mAuthListener);
+        AuthSessionManager.getInstance(this).addObserver(this);
     }
 
     @Override
     public void onStop() {
         super.onStop();
-        if (mAuthListener != null) {
-            mAuth.removeAuthStateListener(mAuthListener);
+        AuthSessionManager.getInstance(this).removeObserver(this);
+    }
+
+    @Override
+    public void onSessionChanged(UserSnapshot user) {
+        if (user != null) {
+            AuthLog.d(TAG, "onSessionChanged: Signed in -> " + user.getUid());
+        } else {
+            AuthLog.d(TAG, "onSessionChanged: Signed out");
         }
+        updateUI(user);
+    }
+
+    @Override
+    public void onAuthSucceeded(UserSnapshot user) {
+        if (mTrace != null) {
+            mTrace.stage("backend_call");
+        }
+        updateUI(user);
+        if (mTrace != null) {
+            mTrace.endOnNextFrame(mViews.status, "first_update_ui");
+            mTrace = null;
+        }
+    }
+
+    @Override
+    public void onAuthFailed(AuthError error) {
+        failTrace("backend_call");
+        mRenderer.render(AuthUiState.signedOut(getString(R.string.auth_failed), null));
     }
 
     @Override
     public void onClick(View v) {
         int i = v.getId();
         if (i == R.id.email_password_create_btn) {
-            createAccount(email.getText().toString(), password.getText().toString());
+            createAccount(mViews.email.getText().toString(), mViews.password.getText().toString());
         } else if (i == R.id.email_password_signin_btn) {
-            signIn(email.getText().toString(), password.getText().toString());
+            signIn(mViews.email.getText().toString(), mViews.password.getText().toString());
         } else if (i == R.id.email_passowrd_signout_btn) {
             signOut();
         } else if (i == R.id.email_password_verify_btn) {
@@ -89,86 +129,55 @@ public class EmailPasswordActivity extends AppCompatActivity implements View.OnC
     }
 
     private void createAccount(String email, String password) {
-        Log.d(TAG, "createAccount:" + email);
+        AuthLog.d(TAG, "createAccount:" + email);
 
-        if (!validateForm()) {
+        if (!validateForm(true)) {
             return;
         }
-        mAuth.createUserWithEmailAndPassword(email, password)
-                .addOnCompleteListener(this, new OnCompleteListener<AuthResult>() {
-                    @Override
-                    public void onComplete(@NonNull Task<AuthResult> task) {
-                        Log.d(TAG, "createUserWithEmail: onComplete ->" + task.isSuccessful());
-
-                        // If sign in fails, display a message to the user. If sign in succeeds
-                        // the auth state listener will be notified and logic to handle the
-                        // signed in user can be handled in the listener.
-                        if (!task.isSuccessful()) {
-                            if (task.getException() instanceof FirebaseAuthUserCollisionException) {
-                                Log.w(TAG, "onComplete: signInWithCredential -> " + "EMAIL ALREADY USED!");
-                                Toast.makeText(EmailPasswordActivity.this, "Email Used already with different credential.", Toast.LENGTH_SHORT).show();
-                            } else {
-                                Log.w(TAG, "signInWithCredential", task.getException());
-                                Toast.makeText(EmailPasswordActivity.this, "Authentication failed.", Toast.LENGTH_SHORT).show();
-                            }
-                            updateUI(null);
-                            signOut();
-                        }
-                    }
-                });
+        if (mTrace == null) {
+            // A second tap joins the pending call, its flow keeps measuring
+            mTrace = AuthTrace.start("email_create");
+        }
+        mResultDispatcher.dispatch(mBackend.createUserWithEmailAndPassword(email, password,
+                mResultDispatcher.getCancellationToken()));
     }
 
     private void signIn(String email, String password) {
-        Log.d(TAG, "signIn:" + email);
-        if (!validateForm()) {
+        AuthLog.d(TAG, "signIn:" + email);
+        if (!validateForm(false)) {
             return;
         }
 
-        mAuth.signInWithEmailAndPassword(email, password)
-                .addOnCompleteListener(this, new OnCompleteListener<AuthResult>() {
-                    @Override
-                    public void onComplete(@NonNull Task<AuthResult> task) {
-                        Log.d(TAG, "signInWithEmail: onComplete -> " + task.isSuccessful());
-
-                        // If sign in fails, display a message to the user. If sign in succeeds
-                        // the auth state listener will be notified and logic to handle the
-                        // signed in user can be handled in the listener.
-                        if (!task.isSuccessful()) {
-                            Log.w(TAG, "signInWithEmail: Failed", task.getException());
-                            Toast.makeText(EmailPasswordActivity.this, R.string.auth_failed,
-                                    Toast.LENGTH_SHORT).show();
-                        }
-
-                        if (!task.isSuccessful()) {
-                            status.setText(R.string.auth_failed);
-                        }
-                    }
-                });
+        if (mTrace == null) {
+            mTrace = AuthTrace.start("email");
+        }
+        mResultDispatcher.dispatch(mBackend.signInWithEmailAndPassword(email, password,
+                mResultDispatcher.getCancellationToken()));
     }
 
     private void signOut() {
-        mAuth.signOut();
+        mBackend.signOut();
         updateUI(null);
     }
 
     private void sendEmailVerification() {
-        findViewById(R.id.email_password_verify_btn).setEnabled(false);
+        mViews.verifyButton.setEnabled(false);
 
         // Send verification email
         // [START send_email_verification]
-        final FirebaseUser user = mAuth.getCurrentUser();
-        user.sendEmailVerification()
+        final UserSnapshot user = AuthSessionManager.getInstance(this).getUser();
+        mBackend.sendEmailVerification()
                 .addOnCompleteListener(this, new OnCompleteListener<Void>() {
                     @Override
                     public void onComplete(@NonNull Task<Void> task) {
                         // [START_EXCLUDE]
                         // Re-enable button
-                        findViewById(R.id.email_password_verify_btn).setEnabled(true);
+                        mViews.verifyButton.setEnabled(true);
 
                         if (task.isSuccessful()) {
                             Toast.makeText(EmailPasswordActivity.this, "Verification email sent to " + user.getEmail(), Toast.LENGTH_SHORT).show();
                         } else {
-                            Log.e(TAG, "sendEmailVerification", task.getException());
+                            AuthLog.e(TAG, "sendEmailVerification", task.getException());
                             Toast.makeText(EmailPasswordActivity.this, "Failed to send verification email.", Toast.LENGTH_SHORT).show();
                         }
                     }
@@ -177,46 +186,83 @@ public class EmailPasswordActivity extends AppCompatActivity implements View.OnC
 
 
 
-    private boolean validateForm() {
-        boolean valid = true;
+    // Shows the errors found by the checks, a form that would be refused is not sent
+    private boolean validateForm(boolean newAccount) {
+        CredentialValidator.Result email = mEmailCheck;
+        if (email == CredentialValidator.Result.DISPOSABLE_EMAIL && !newAccount) {
+            // Accounts created before the domain was listed can still sign in
+            email = CredentialValidator.Result.VALID;
+        }
+        boolean valid = showCheck(mViews.email, email);
+        valid &= showCheck(mViews.password, mPasswordCheck);
+        mValidator.onSubmit(valid);
+        return valid;
+    }
 
-        String mail = email.getText().toString();
-        if (TextUtils.isEmpty(mail)) {
-            email.setError("Required.");
-            valid = false;
-        } else {
-            email.setError(null);
+    private boolean showCheck(EditText field, CredentialValidator.Result result) {
+        if (result == CredentialValidator.Result.VALID) {
+            field.setError(null);
+            return true;
         }
+        field.setError(getString(result.getMessage(), CredentialValidator.MIN_PASSWORD_LENGTH));
+        return false;
+    }
 
-        String passwd = password.getText().toString();
-        if (TextUtils.isEmpty(passwd)) {
-            password.setError("Required.");
-            valid = false;
-        } else {
-            password.setError(null);
+    private void failTrace(String stage) {
+        if (mTrace != null) {
+            mTrace.fail(stage);
+            mTrace = null;
         }
-        return valid;
     }
 
-    private void updateUI(FirebaseUser user) {
+    private void updateUI(UserSnapshot user) {
         if (user != null) {
-            status.setText(getString(R.string.email_password_status_form,
-                    user.getEmail(), user.isEmailVerified()));
-            detail.setText(getString(R.string.email_password_firebase_status_form, user.getUid()));
+            mRenderer.render(AuthUiState.signedIn(
+                    getString(R.string.email_password_status_form, user.getEmail(), user.isEmailVerified()),
+                    getString(R.string.email_password_firebase_status_form, user.getUid()))
+                    .withVerifyEnabled(!user.isEmailVerified()));
+        } else {
+            mRenderer.render(AuthUiState.signedOut(getString(R.string.sign_out_text), null));
+        }
+    }
 
-            findViewById(R.id.inputs_layout).setVisibility(View.GONE);
-            findViewById(R.id.signin_layout).setVisibility(View.GONE);
-            findViewById(R.id.signed_layout).setVisibility(View.VISIBLE);
+    private abstract static class FieldWatcher implements TextWatcher {
 
-            findViewById(R.id.email_password_verify_btn).setEnabled(!user.isEmailVerified());
-        } else {
-            status.setText(R.string.sign_out_text);
-            detail.setText(null);
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
 
-            findViewById(R.id.inputs_layout).setVisibility(View.VISIBLE);
-            findViewById(R.id.signin_layout).setVisibility(View.VISIBLE);
-            findViewById(R.id.signed_layout).setVisibility(View.GONE);
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
         }
     }
 
+    // Views of R.layout.activity_email_password, looked up once when the content is set
+    static final class Views {
+        final TextView status;
+        final TextView detail;
+        final EditText email;
+        final EditText password;
+        final View inputsLayout;
+        final View signinLayout;
+        final View signedLayout;
+        final View signInButton;
+        final View createButton;
+        final View signOutButton;
+        final View verifyButton;
+
+        Views(View root) {
+            status = (TextView) root.findViewById(R.id.status);
+            detail = (TextView) root.findViewById(R.id.details);
+            email = (EditText) root.findViewById(R.id.email_input_field);
+            password = (EditText) root.findViewById(R.id.password_input_field);
+            inputsLayout = root.findViewById(R.id.inputs_layout);
+            signinLayout = root.findViewById(R.id.signin_layout);
+            signedLayout = root.findViewById(R.id.signed_layout);
+            signInButton = root.findViewById(R.id.email_password_signin_btn);
+            createButton = root.findViewById(R.id.email_password_create_btn);
+            signOutButton = root.findViewById(R.id.email_passowrd_signout_btn);
+            verifyButton = root.findViewById(R.id.email_password_verify_btn);
+        }
+    }
 }
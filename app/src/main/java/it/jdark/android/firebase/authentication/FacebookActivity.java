@@ -1,173 +0,0 @@
-package it.jdark.android.firebase.authentication;
-
-import android.content.Intent;
-import android.os.Bundle;
-import android.support.annotation.NonNull;
-import android.support.v7.app.AppCompatActivity;
-import android.util.Log;
-import android.view.View;
-import android.widget.TextView;
-import android.widget.Toast;
-
-import com.facebook.AccessToken;
-import com.facebook.CallbackManager;
-import com.facebook.FacebookCallback;
-import com.facebook.FacebookException;
-import com.facebook.FacebookSdk;
-import com.facebook.login.LoginManager;
-import com.facebook.login.LoginResult;
-import com.facebook.login.widget.LoginButton;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
-import com.google.firebase.auth.AuthCredential;
-import com.google.firebase.auth.AuthResult;
-import com.google.firebase.auth.FacebookAuthProvider;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseAuthUserCollisionException;
-import com.google.firebase.auth.FirebaseUser;
-
-public class FacebookActivity extends AppCompatActivity implements View.OnClickListener{
-
-    private final String TAG = getClass().getSimpleName();
-
-    private CallbackManager callbackManager;
-    private FirebaseAuth mAuth;
-    private FirebaseAuth.AuthStateListener mAuthListener;
-
-    private TextView status, detail;
-
-
-    @Override
-    protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        FacebookSdk.sdkInitialize(getApplicationContext());
-        setContentView(R.layout.activity_facebook);
-
-        status = (TextView) findViewById(R.id.status);
-        detail = (TextView) findViewById(R.id.details);
-        findViewById(R.id.sign_out_button).setOnClickListener(this);
-
-
-        mAuth = FirebaseAuth.getInstance();
-        mAuthListener = new FirebaseAuth.AuthStateListener() {
-            @Override
-            public void onAuthStateChanged(@NonNull FirebaseAuth firebaseAuth) {
-                FirebaseUser user = firebaseAuth.getCurrentUser();
-                if (user != null) {
-                    // User is signed in
-                    Log.d(TAG, "onAuthStateChanged: signed_in -> " + user.getUid());
-                } else {
-                    // User is signed out
-                    Log.d(TAG, "onAuthStateChanged: signed_out");
-                }
-                updateUI(user);
-                }
-            };
-
-
-        callbackManager = CallbackManager.Factory.create();
-
-
-        final LoginButton loginButton = (LoginButton) findViewById(R.id.sign_in_facebook_button);
-        loginButton.setReadPermissions("email", "public_profile");
-        loginButton.registerCallback(callbackManager, new FacebookCallback<LoginResult>() {
-            @Override
-            public void onSuccess(LoginResult loginResult) {
-                Log.d(TAG, "onSuccess: LoginResult -> " + loginResult.getAccessToken());
-                handleFacebookAccessToken(loginResult.getAccessToken());
-            }
-
-            @Override
-            public void onCancel() {
-                Toast.makeText(getApplicationContext(), "Authentication Cancel by User!", Toast.LENGTH_LONG).show();
-                Log.d(TAG, "onCancel: Authentication Cancel!");
-                updateUI(null);
-            }
-
-            @Override
-            public void onError(FacebookException error) {
-                Toast.makeText(getApplicationContext(), "Authentication ERROR!", Toast.LENGTH_LONG).show();
-                Log.d(TAG, "onError: Authentication Error!");
-                updateUI(null);
-            }
-        });
-    }
-
-    @Override
-    protected void onStart() {
-        super.onStart();
-        if (mAuthListener != null) {
-            mAuth.addAuthStateListener(mAuthListener);
-        }
-    }
-
-    @Override
-    protected void onStop() {
-        super.onStop();
-        if (mAuthListener != null) {
-            mAuth.removeAuthStateListener(mAuthListener);
-        }
-    }
-
-    @Override
-    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
-        callbackManager.onActivityResult(requestCode, resultCode, data);
-    }
-
-
-    private void handleFacebookAccessToken(AccessToken accessToken) {
-        AuthCredential credential = FacebookAuthProvider.getCredential(accessToken.getToken());
-
-        mAuth.signInWithCredential(credential).addOnCompleteListener(this, new OnCompleteListener<AuthResult>() {
-            @Override
-            public void onComplete(@NonNull Task<AuthResult> task) {
-                Log.d(TAG, "onComplete: signInWithCredential -> " + task.isSuccessful());
-                if (!task.isSuccessful()) {
-                    if (task.getException() instanceof FirebaseAuthUserCollisionException) {
-                        Log.w(TAG, "onComplete: signInWithCredential -> " + "EMAIL ALREADY USED!");
-                        Toast.makeText(FacebookActivity.this, "Email Used already with different credential.", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Log.w(TAG, "signInWithCredential", task.getException());
-                        Toast.makeText(FacebookActivity.this, "Authentication failed.", Toast.LENGTH_SHORT).show();
-                    }
-                    updateUI(null);
-                    signOut();
-                }
-            }
-        });
-    }
-
-    private void updateUI(FirebaseUser user) {
-        if (user != null) {
-            // Signed in
-            status.setText(getString(R.string.firebase_ui_status_form, user.getEmail()));
-            detail.setText(getString(R.string.firebase_ui_detail_form, user.getUid()));
-
-            findViewById(R.id.sign_in_facebook_button).setVisibility(View.GONE);
-            findViewById(R.id.sign_out_button).setVisibility(View.VISIBLE);
-        } else {
-            // Signed out
-            status.setText(R.string.sign_out_text);
-            detail.setText(R.string.detail_empty_text);
-
-            findViewById(R.id.sign_in_facebook_button).setVisibility(View.VISIBLE);
-            findViewById(R.id.sign_out_button).setVisibility(View.GONE);
-        }
-    }
-
-    private void signOut() {
-        mAuth.signOut();
-        LoginManager.getInstance().logOut();
-        updateUI(null);
-    }
-
-    @Override
-    public void onClick(View v) {
-        int i = v.getId();
-        if (i == R.id.sign_out_button) {
-            signOut();
-        }
-
-    }
-}
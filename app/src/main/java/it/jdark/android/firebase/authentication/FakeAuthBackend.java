@@ -0,0 +1,338 @@
+package it.jdark.android.firebase.authentication;
+
+import android.app.Activity;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.OnTokenCanceledListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.TaskExecutors;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseException;
+import com.google.firebase.FirebaseNetworkException;
+import com.google.firebase.auth.AuthCredential;
+import com.google.firebase.auth.FirebaseAuthInvalidCredentialsException;
+import com.google.firebase.auth.FirebaseAuthUserCollisionException;
+import com.google.firebase.auth.PhoneAuthCredential;
+import com.google.firebase.auth.PhoneAuthProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory {@link AuthBackend}, for benchmarks and offline runs.
+ * <p>
+ * Accounts live in a map, every call completes after the configured latency and fails with
+ * the configured probability. Both are driven by a seeded {@link Random}, so two runs with
+ * the same configuration produce the same sequence of results.
+ * <p>
+ * Phone verification always sends the code returned by {@link Builder#setSmsCode(String)}.
+ */
+public final class FakeAuthBackend implements AuthBackend {
+
+    // Same lifetime as the Firebase ID tokens, renewed by getIdToken in their last 5 minutes
+    private static final long TOKEN_LIFETIME_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long TOKEN_REFRESH_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Map<String, String> mPasswords = new HashMap<>();
+    private final CopyOnWriteArrayList<StateListener> mListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final Executor mCallbackExecutor;
+    private final long mLatencyMs;
+    private final long mJitterMs;
+    private final double mFailureRate;
+    private final String mSmsCode;
+    private final boolean mAutoRetrieval;
+    private final Random mRandom;
+
+    private UserSnapshot mUser;
+    private IdToken mIdToken;
+    private int mTokenCount;
+    private String mPendingPhoneNumber;
+    private int mVerificationCount;
+
+    private FakeAuthBackend(Builder builder) {
+        mCallbackExecutor = builder.mCallbackExecutor;
+        mLatencyMs = builder.mLatencyMs;
+        mJitterMs = builder.mJitterMs;
+        mFailureRate = builder.mFailureRate;
+        mSmsCode = builder.mSmsCode;
+        mAutoRetrieval = builder.mAutoRetrieval;
+        mRandom = new Random(builder.mSeed);
+    }
+
+    @Nullable
+    @Override
+    public synchronized UserSnapshot getCurrentUser() {
+        return mUser;
+    }
+
+    @Override
+    public void addStateListener(@NonNull StateListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    @Override
+    public void removeStateListener(@NonNull StateListener listener) {
+        mListeners.remove(listener);
+    }
+
+    @Override
+    public Task<UserSnapshot> signInWithEmailAndPassword(final String email, final String password,
+                                                         @NonNull CancellationToken cancellation) {
+        return schedule(cancellation, new Call<UserSnapshot>() {
+            @Override
+            public UserSnapshot run() throws Exception {
+                String expected = mPasswords.get(email);
+                if (expected == null) {
+                    // Unknown accounts are created on first sign in, so the benchmarks do not
+                    // need a registration step
+                    mPasswords.put(email, password);
+                } else if (!expected.equals(password)) {
+                    throw new FirebaseAuthInvalidCredentialsException("ERROR_WRONG_PASSWORD",
+                            "The password is invalid or the user does not have a password.");
+                }
+                return emailUser(email);
+            }
+        });
+    }
+
+    @Override
+    public Task<UserSnapshot> createUserWithEmailAndPassword(final String email, final String password,
+                                                             @NonNull CancellationToken cancellation) {
+        return schedule(cancellation, new Call<UserSnapshot>() {
+            @Override
+            public UserSnapshot run() throws Exception {
+                if (mPasswords.containsKey(email)) {
+                    throw new FirebaseAuthUserCollisionException("ERROR_EMAIL_ALREADY_IN_USE",
+                            "The email address is already in use by another account.");
+                }
+                mPasswords.put(email, password);
+                return emailUser(email);
+            }
+        });
+    }
+
+    @Override
+    public Task<UserSnapshot> signInWithCredential(final AuthCredential credential,
+                                                   @NonNull CancellationToken cancellation) {
+        return schedule(cancellation, new Call<UserSnapshot>() {
+            @Override
+            public UserSnapshot run() throws Exception {
+                if (credential instanceof PhoneAuthCredential) {
+                    if (!mSmsCode.equals(((PhoneAuthCredential) credential).getSmsCode())) {
+                        throw new FirebaseAuthInvalidCredentialsException("ERROR_INVALID_VERIFICATION_CODE",
+                                "The sms verification code used to create the phone auth credential is invalid.");
+                    }
+                    return new UserSnapshot("fake-phone-" + mPendingPhoneNumber, null,
+                            mPendingPhoneNumber, null, false);
+                }
+                String provider = credential.getProvider();
+                return new UserSnapshot("fake-" + provider, provider + "@example.com", null, provider, true);
+            }
+        });
+    }
+
+    @Override
+    public Task<Void> sendEmailVerification() {
+        return schedule(null, new Call<Void>() {
+            @Override
+            public Void run() throws Exception {
+                if (mUser == null) {
+                    throw new IllegalStateException("No signed in user");
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public Task<IdToken> getIdToken(final boolean forceRefresh) {
+        return schedule(null, new Call<IdToken>() {
+            @Override
+            public IdToken run() throws Exception {
+                if (mUser == null) {
+                    throw new IllegalStateException("No signed in user");
+                }
+                if (forceRefresh || mIdToken == null || !mIdToken.getUid().equals(mUser.getUid())
+                        || mIdToken.getExpiresAt() - System.currentTimeMillis() < TOKEN_REFRESH_MS) {
+                    mIdToken = new IdToken(mUser.getUid(), "fake-token-" + (++mTokenCount),
+                            System.currentTimeMillis() + TOKEN_LIFETIME_MS);
+                }
+                return mIdToken;
+            }
+        });
+    }
+
+    @Override
+    public void verifyPhoneNumber(final String phoneNumber, long timeout, TimeUnit unit, Activity activity,
+                                  final PhoneAuthProvider.OnVerificationStateChangedCallbacks callbacks,
+                                  @Nullable PhoneAuthProvider.ForceResendingToken token) {
+        schedule(null, new Call<String>() {
+            @Override
+            public String run() throws Exception {
+                mPendingPhoneNumber = phoneNumber;
+                return "fake-verification-" + (++mVerificationCount);
+            }
+        }).addOnCompleteListener(mCallbackExecutor, new OnCompleteListener<String>() {
+            @Override
+            public void onComplete(@NonNull Task<String> task) {
+                if (!task.isSuccessful()) {
+                    callbacks.onVerificationFailed((FirebaseException) task.getException());
+                    return;
+                }
+                // The fake has no resending token to hand out
+                callbacks.onCodeSent(task.getResult(), null);
+                if (mAutoRetrieval) {
+                    callbacks.onVerificationCompleted(PhoneAuthProvider.getCredential(task.getResult(), mSmsCode));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void signOut() {
+        setUser(null);
+    }
+
+    private UserSnapshot emailUser(String email) {
+        return new UserSnapshot("fake-" + Integer.toHexString(email.hashCode()), email, null, null, true);
+    }
+
+    private void setUser(@Nullable UserSnapshot user) {
+        synchronized (this) {
+            mUser = user;
+        }
+        final UserSnapshot snapshot = user;
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (StateListener listener : mListeners) {
+                    listener.onUserChanged(snapshot);
+                }
+            }
+        });
+    }
+
+    private interface Call<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Runs the call after the configured latency. A cancelled token cancels the task and
+     * drops the call if it has not started yet.
+     */
+    private synchronized <T> Task<T> schedule(@Nullable CancellationToken cancellation, final Call<T> call) {
+        if (cancellation != null && cancellation.isCancellationRequested()) {
+            return Tasks.forCanceled();
+        }
+        final TaskCompletionSource<T> source = cancellation != null
+                ? new TaskCompletionSource<T>(cancellation)
+                : new TaskCompletionSource<T>();
+        final boolean fail = mRandom.nextDouble() < mFailureRate;
+        long delay = mLatencyMs + (mJitterMs > 0 ? (long) (mRandom.nextDouble() * mJitterMs) : 0);
+
+        final ScheduledFuture<?> future = mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (fail) {
+                    source.trySetException(new FirebaseNetworkException("Injected failure"));
+                    return;
+                }
+                try {
+                    T result;
+                    synchronized (FakeAuthBackend.this) {
+                        result = call.run();
+                    }
+                    if (result instanceof UserSnapshot) {
+                        setUser((UserSnapshot) result);
+                    }
+                    source.trySetResult(result);
+                } catch (Exception e) {
+                    source.trySetException(e);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+
+        if (cancellation != null) {
+            cancellation.onCanceledRequested(new OnTokenCanceledListener() {
+                @Override
+                public void onCanceled() {
+                    future.cancel(false);
+                }
+            });
+        }
+        return source.getTask();
+    }
+
+    public static final class Builder {
+
+        private Executor mCallbackExecutor = TaskExecutors.MAIN_THREAD;
+        private long mLatencyMs;
+        private long mJitterMs;
+        private double mFailureRate;
+        private long mSeed = 42;
+        private String mSmsCode = "123456";
+        private boolean mAutoRetrieval;
+
+        /**
+         * Executor delivering the state changes and the phone verification callbacks,
+         * the main thread by default.
+         */
+        public Builder setCallbackExecutor(Executor executor) {
+            mCallbackExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Fixed latency of every call, plus a uniform random jitter in [0, jitterMs).
+         */
+        public Builder setLatency(long latencyMs, long jitterMs) {
+            mLatencyMs = latencyMs;
+            mJitterMs = jitterMs;
+            return this;
+        }
+
+        /**
+         * Probability in [0, 1] that a call fails with a {@link FirebaseNetworkException}.
+         */
+        public Builder setFailureRate(double failureRate) {
+            mFailureRate = failureRate;
+            return this;
+        }
+
+        public Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        public Builder setSmsCode(String smsCode) {
+            mSmsCode = smsCode;
+            return this;
+        }
+
+        /**
+         * When set, the verification completes right after the code is sent, as it does
+         * when the device reads the SMS by itself.
+         */
+        public Builder setAutoRetrieval(boolean autoRetrieval) {
+            mAutoRetrieval = autoRetrieval;
+            return this;
+        }
+
+        public FakeAuthBackend build() {
+            return new FakeAuthBackend(this);
+        }
+    }
+}
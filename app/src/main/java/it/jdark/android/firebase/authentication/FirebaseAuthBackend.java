@@ -0,0 +1,140 @@
+package it.jdark.android.firebase.authentication;
+
+import android.app.Activity;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.AuthCredential;
+import com.google.firebase.auth.AuthResult;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.auth.GetTokenResult;
+import com.google.firebase.auth.PhoneAuthProvider;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AuthBackend} backed by {@link FirebaseAuth}.
+ * <p>
+ * Firebase can't abort a request already sent, cancelling a sign-in detaches the caller from
+ * it: the result is not delivered, the session still follows the auth state.
+ */
+public final class FirebaseAuthBackend implements AuthBackend, FirebaseAuth.AuthStateListener {
+
+    // Shared by every sign-in call, maps the Firebase result to the snapshot of its user
+    private static final Continuation<AuthResult, UserSnapshot> TO_SNAPSHOT =
+            new Continuation<AuthResult, UserSnapshot>() {
+                @Override
+                public UserSnapshot then(@NonNull Task<AuthResult> task) throws Exception {
+                    if (!task.isSuccessful()) {
+                        throw task.getException();
+                    }
+                    return UserSnapshot.from(task.getResult().getUser());
+                }
+            };
+
+    private final FirebaseAuth mAuth;
+    private final CopyOnWriteArrayList<StateListener> mListeners = new CopyOnWriteArrayList<>();
+
+    public FirebaseAuthBackend(FirebaseAuth auth) {
+        mAuth = auth;
+    }
+
+    @Nullable
+    @Override
+    public UserSnapshot getCurrentUser() {
+        return UserSnapshot.from(mAuth.getCurrentUser());
+    }
+
+    @Override
+    public synchronized void addStateListener(@NonNull StateListener listener) {
+        if (mListeners.addIfAbsent(listener) && mListeners.size() == 1) {
+            mAuth.addAuthStateListener(this);
+        }
+    }
+
+    @Override
+    public synchronized void removeStateListener(@NonNull StateListener listener) {
+        if (mListeners.remove(listener) && mListeners.isEmpty()) {
+            mAuth.removeAuthStateListener(this);
+        }
+    }
+
+    @Override
+    public void onAuthStateChanged(@NonNull FirebaseAuth firebaseAuth) {
+        UserSnapshot user = UserSnapshot.from(firebaseAuth.getCurrentUser());
+        for (StateListener listener : mListeners) {
+            listener.onUserChanged(user);
+        }
+    }
+
+    @Override
+    public Task<UserSnapshot> signInWithEmailAndPassword(String email, String password,
+                                                         @NonNull CancellationToken cancellation) {
+        return AuthTasks.cancellable(
+                mAuth.signInWithEmailAndPassword(email, password).continueWith(TO_SNAPSHOT), cancellation);
+    }
+
+    @Override
+    public Task<UserSnapshot> createUserWithEmailAndPassword(String email, String password,
+                                                             @NonNull CancellationToken cancellation) {
+        return AuthTasks.cancellable(
+                mAuth.createUserWithEmailAndPassword(email, password).continueWith(TO_SNAPSHOT), cancellation);
+    }
+
+    @Override
+    public Task<UserSnapshot> signInWithCredential(AuthCredential credential,
+                                                   @NonNull CancellationToken cancellation) {
+        return AuthTasks.cancellable(
+                mAuth.signInWithCredential(credential).continueWith(TO_SNAPSHOT), cancellation);
+    }
+
+    @Override
+    public Task<Void> sendEmailVerification() {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user == null) {
+            return Tasks.forException(new IllegalStateException("No signed in user"));
+        }
+        return user.sendEmailVerification();
+    }
+
+    @Override
+    public Task<IdToken> getIdToken(boolean forceRefresh) {
+        final FirebaseUser user = mAuth.getCurrentUser();
+        if (user == null) {
+            return Tasks.forException(new IllegalStateException("No signed in user"));
+        }
+        return user.getIdToken(forceRefresh).continueWith(new Continuation<GetTokenResult, IdToken>() {
+            @Override
+            public IdToken then(@NonNull Task<GetTokenResult> task) throws Exception {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                GetTokenResult result = task.getResult();
+                // The expiration comes in seconds
+                return new IdToken(user.getUid(), result.getToken(), result.getExpirationTimestamp() * 1000);
+            }
+        });
+    }
+
+    @Override
+    public void verifyPhoneNumber(String phoneNumber, long timeout, TimeUnit unit, Activity activity,
+                                  PhoneAuthProvider.OnVerificationStateChangedCallbacks callbacks,
+                                  @Nullable PhoneAuthProvider.ForceResendingToken token) {
+        if (token == null) {
+            PhoneAuthProvider.getInstance().verifyPhoneNumber(phoneNumber, timeout, unit, activity, callbacks);
+        } else {
+            PhoneAuthProvider.getInstance().verifyPhoneNumber(phoneNumber, timeout, unit, activity, callbacks, token);
+        }
+    }
+
+    @Override
+    public void signOut() {
+        mAuth.signOut();
+    }
+}
@@ -1,99 +0,0 @@
-package it.jdark.android.firebase.authentication;
-
-import android.content.Intent;
-import android.os.Bundle;
-import android.support.v7.app.AppCompatActivity;
-import android.view.View;
-import android.widget.TextView;
-import android.widget.Toast;
-
-import com.firebase.ui.auth.AuthUI;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseUser;
-
-import java.util.Arrays;
-
-public class FirebaseUIActivity extends AppCompatActivity implements View.OnClickListener {
-
-    private static final int RC_SIGN_IN = 9001;
-
-    private FirebaseAuth mAuth;
-
-    private TextView status, detail;
-
-    @Override
-    protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_firebase_ui);
-
-        mAuth = FirebaseAuth.getInstance();
-
-        status = (TextView) findViewById(R.id.status);
-        detail = (TextView) findViewById(R.id.details);
-
-        findViewById(R.id.resend_code).setOnClickListener(this);
-        findViewById(R.id.sign_out_button).setOnClickListener(this);
-
-    }
-
-    @Override
-    public void onClick(View v) {
-        switch (v.getId()) {
-            case R.id.resend_code:
-                startSignIn();
-                break;
-            case R.id.sign_out_button:
-                signOut();
-                break;
-        }
-    }
-
-    private void startSignIn() {
-        Intent intent = AuthUI.getInstance().createSignInIntentBuilder()
-                .setIsSmartLockEnabled(!BuildConfig.DEBUG)
-                .setProviders(Arrays.asList(new AuthUI.IdpConfig.Builder(AuthUI.EMAIL_PROVIDER).build()))
-                .build();
-
-        startActivityForResult(intent, RC_SIGN_IN);
-    }
-
-    private void signOut() {
-        AuthUI.getInstance().signOut(this);
-        updateUI(null);
-    }
-
-    @Override
-    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
-
-        if (requestCode == RC_SIGN_IN) {
-            if (resultCode == RESULT_OK) {
-                // Sign in succeeded
-                updateUI(mAuth.getCurrentUser());
-            } else {
-                // Sign in failed
-                Toast.makeText(this, "Sign In Failed", Toast.LENGTH_SHORT).show();
-                updateUI(null);
-            }
-        }
-    }
-
-    private void updateUI(FirebaseUser user) {
-        if (user != null) {
-            // Signed in
-            status.setText(getString(R.string.firebase_ui_status_form, user.getEmail()));
-            detail.setText(getString(R.string.firebase_ui_detail_form, user.getUid()));
-
-            findViewById(R.id.resend_code).setVisibility(View.GONE);
-            findViewById(R.id.sign_out_button).setVisibility(View.VISIBLE);
-        } else {
-            // Signed out
-            status.setText(R.string.sign_out_text);
-            detail.setText(R.string.detail_empty_text);
-
-            findViewById(R.id.resend_code).setVisibility(View.VISIBLE);
-            findViewById(R.id.sign_out_button).setVisibility(View.GONE);
-        }
-    }
-
-}
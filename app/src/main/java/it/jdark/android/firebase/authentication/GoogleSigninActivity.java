@@ -4,114 +4,128 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
-import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.google.android.gms.auth.api.Auth;
+import com.google.android.gms.auth.api.signin.GoogleSignIn;
 import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
-import com.google.android.gms.auth.api.signin.GoogleSignInOptions;
-import com.google.android.gms.auth.api.signin.GoogleSignInResult;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.common.api.Status;
+import com.google.android.gms.auth.api.signin.GoogleSignInClient;
+import com.google.android.gms.common.api.ApiException;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.AuthCredential;
-import com.google.firebase.auth.AuthResult;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.auth.GoogleAuthProvider;
 
-public class GoogleSigninActivity extends AppCompatActivity implements
-        GoogleApiClient.OnConnectionFailedListener, View.OnClickListener {
+public class GoogleSigninActivity extends AppCompatActivity implements View.OnClickListener,
+        AuthSessionManager.Observer, AuthResultDispatcher.Callback {
 
 
     private final String TAG = getClass().getSimpleName();
     private final static int RC_SIGN_IN = 01;
 
-    private FirebaseAuth mAuth;
+    private static final AuthResultDispatcher.CredentialFactory CREDENTIAL =
+            new AuthResultDispatcher.CredentialFactory() {
+                @Override
+                public AuthCredential create(String idToken, String unused) {
+                    return GoogleAuthProvider.getCredential(idToken, null);
+                }
+            };
 
-    private FirebaseAuth.AuthStateListener mAuthListener;
+    private AuthBackend mBackend;
+    private AuthResultDispatcher mResultDispatcher;
 
-    private GoogleApiClient mGoogleApiClient;
-    private TextView status, detail;
+    private GoogleSignInClient mGoogleSignInClient;
+    private Views mViews;
+    private AuthUiRenderer mRenderer;
+    private AuthTrace.Flow mTrace;
 
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_google_signin);
+        mViews = new Views(findViewById(android.R.id.content));
+        mRenderer = new AuthUiRenderer.Builder(mViews.status, mViews.detail)
+                .signedInViews(mViews.signedLayout)
+                .signedOutViews(mViews.signInButton)
+                .build();
 
-        status = (TextView) findViewById(R.id.status);
-        detail = (TextView) findViewById(R.id.details);
 
         // Button listeners
-        findViewById(R.id.google_signin_button).setOnClickListener(this);
-        findViewById(R.id.google_signout_button).setOnClickListener(this);
-        findViewById(R.id.google_disconnect_button).setOnClickListener(this);
-
-        //Configure Google Sign in
-        GoogleSignInOptions gso = new GoogleSignInOptions.Builder(GoogleSignInOptions.DEFAULT_SIGN_IN)
-                .requestIdToken(getString(R.string.default_web_client_id))
-                .requestEmail()
-                .build();
+        mViews.signInButton.setOnClickListener(this);
+        mViews.signOutButton.setOnClickListener(this);
+        mViews.disconnectButton.setOnClickListener(this);
 
-        mGoogleApiClient= new GoogleApiClient.Builder(this)
-                .enableAutoManage(this, this)
-                .addApi(Auth.GOOGLE_SIGN_IN_API, gso)
-                .build();
+        // Google Sign in client of the process, only the first screen pays its setup
+        long start = System.nanoTime();
+        mGoogleSignInClient = ProviderRegistry.getInstance(this).getGoogleSignInClient();
+        AuthTrace.record("google.client_setup", System.nanoTime() - start);
 
-        mAuth = FirebaseAuth.getInstance();
-        mAuthListener = new FirebaseAuth.AuthStateListener() {
-            @Override
-            public void onAuthStateChanged(@NonNull FirebaseAuth firebaseAuth) {
-                FirebaseUser user = firebaseAuth.getCurrentUser();
-                if (user != null) {
-                    // User is signed in
-                    Log.d(TAG, "onAuthStateChanged: signed_in -> " + user.getUid());
-                } else {
-                    // User is signed out
-                    Log.d(TAG, "onAuthStateChanged: signed_out");
-                }
-                updateUI(user);
-            }
-        };
+        mBackend = AuthBackends.get();
+        mResultDispatcher = new AuthResultDispatcher(this, this);
     }
 
 
     @Override
     protected void onStart() {
         super.onStart();
-        if (mAuthListener != null) {
-            mAuth.addAuthStateListener(mAuthListener);
-        }
+        AuthSessionManager.getInstance(this).addObserver(this);
     }
 
     @Override
     protected void onStop() {
         super.onStop();
-        if (mAuthListener != null) {
-            mAuth.removeAuthStateListener(mAuthListener);
+        AuthSessionManager.getInstance(this).removeObserver(this);
+    }
+
+    @Override
+    public void onSessionChanged(UserSnapshot user) {
+        if (user != null) {
+            // User is signed in
+            AuthLog.d(TAG, "onSessionChanged: signed_in -> " + user.getUid());
+        } else {
+            // User is signed out
+            AuthLog.d(TAG, "onSessionChanged: signed_out");
         }
+        updateUI(user);
+    }
+
+    @Override
+    public void onAuthSucceeded(UserSnapshot user) {
+        if (mTrace != null) {
+            mTrace.stage("sign_in_with_credential");
+        }
+        updateUI(user);
+        if (mTrace != null) {
+            mTrace.endOnNextFrame(mViews.status, "first_update_ui");
+            mTrace = null;
+        }
+    }
+
+    @Override
+    public void onAuthFailed(AuthError error) {
+        failTrace("sign_in_with_credential");
     }
 
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
-        // Result returned from launching the Intent from GoogleSignInApi.getSignInIntent(...);
+        // Result returned from launching the Intent from GoogleSignInClient.getSignInIntent();
         if (requestCode == RC_SIGN_IN) {
-            GoogleSignInResult result = Auth.GoogleSignInApi.getSignInResultFromIntent(data);
-            if (result.isSuccess()) {
+            Task<GoogleSignInAccount> result = GoogleSignIn.getSignedInAccountFromIntent(data);
+            if (result.isSuccessful()) {
+                if (mTrace != null) {
+                    mTrace.stage("activity_result");
+                }
                 // Google Sign In was successful, authenticate with Firebase
-                GoogleSignInAccount account = result.getSignInAccount();
-                firebaseAuthWithGoogle(account);
+                firebaseAuthWithGoogle(result.getResult());
             } else {
                 // Google Sign In failed, update UI appropriately
+                AuthLog.d(TAG, "onActivityResult: sign in failed, status " + statusCode(result));
                 Toast.makeText(this, "Login cancell by user!", Toast.LENGTH_LONG).show();
+                failTrace("activity_result");
                 updateUI(null);
             }
         }
@@ -129,78 +143,109 @@ public class GoogleSigninActivity extends AppCompatActivity implements
         }
     }
 
-    @Override
-    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-        // An unresolvable error has occurred and Google APIs (including Sign-In) will not
-        // be available.
-        Log.d(TAG, "onConnectionFailed:" + connectionResult);
-        Toast.makeText(this, "Google Play Services error.", Toast.LENGTH_SHORT).show();
-
+    private void signIn() {
+        if (mTrace == null) {
+            mTrace = AuthTrace.start("google");
+        }
+        // A returning user is signed in without the account chooser, the intent is the
+        // fallback when there is no previous account or its grant is gone
+        AuthTasks.cancellable(mGoogleSignInClient.silentSignIn(), mResultDispatcher.getCancellationToken())
+                .addOnCompleteListener(this, new OnCompleteListener<GoogleSignInAccount>() {
+                    @Override
+                    public void onComplete(@NonNull Task<GoogleSignInAccount> task) {
+                        if (task.isCanceled() || mTrace == null) {
+                            return;
+                        }
+                        if (task.isSuccessful()) {
+                            mTrace.stage("silent_sign_in");
+                            AuthTrace.count("google.silent_sign_in.hits");
+                            firebaseAuthWithGoogle(task.getResult());
+                        } else {
+                            AuthLog.d(TAG, "silentSignIn: not available, status " + statusCode(task));
+                            mTrace.stage("silent_sign_in.miss");
+                            AuthTrace.count("google.silent_sign_in.misses");
+                            launchSignInIntent();
+                        }
+                    }
+                });
     }
 
-    private void signIn() {
-        Intent signInIntent = Auth.GoogleSignInApi.getSignInIntent(mGoogleApiClient);
-        startActivityForResult(signInIntent, RC_SIGN_IN);
+    private void launchSignInIntent() {
+        mTrace.beginSection("intent_launch");
+        startActivityForResult(mGoogleSignInClient.getSignInIntent(), RC_SIGN_IN);
+        mTrace.endSection();
     }
 
     private void signOut() {
-        mAuth.signOut();
+        mBackend.signOut();
 
-        Auth.GoogleSignInApi.signOut(mGoogleApiClient).setResultCallback(
-                new ResultCallback<Status>() {
-                    @Override
-                    public void onResult(@NonNull Status status) {
-                        updateUI(null);
-                    }
-                });
+        mGoogleSignInClient.signOut().addOnCompleteListener(this, new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull Task<Void> task) {
+                updateUI(null);
+            }
+        });
     }
 
     private void revokeAccess() {
-        mAuth.signOut();
+        mBackend.signOut();
 
-        Auth.GoogleSignInApi.revokeAccess(mGoogleApiClient).setResultCallback(
-                new ResultCallback<Status>() {
-                    @Override
-                    public void onResult(@NonNull Status status) {
-                        updateUI(null);
-                    }
-                });
+        mGoogleSignInClient.revokeAccess().addOnCompleteListener(this, new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull Task<Void> task) {
+                updateUI(null);
+            }
+        });
+    }
+
+    private static int statusCode(Task<?> task) {
+        Exception e = task.getException();
+        return e instanceof ApiException ? ((ApiException) e).getStatusCode() : -1;
     }
 
     private void firebaseAuthWithGoogle(GoogleSignInAccount account) {
-        Log.d(TAG, "firebaseAuthWithGoogle:" + account.getId());
+        AuthLog.d(TAG, "firebaseAuthWithGoogle:" + account.getId());
 
-        AuthCredential credential = GoogleAuthProvider.getCredential(account.getIdToken(), null);
-        mAuth.signInWithCredential(credential)
-                .addOnCompleteListener(this, new OnCompleteListener<AuthResult>() {
-                    @Override
-                    public void onComplete(@NonNull Task<AuthResult> task) {
-                        Log.d(TAG, "signInWithCredential:onComplete:" + task.isSuccessful());
-
-                        // If sign in fails, display a message to the user. If sign in succeeds
-                        // the auth state listener will be notified and logic to handle the
-                        // signed in user can be handled in the listener.
-                        if (!task.isSuccessful()) {
-                            Log.w(TAG, "signInWithCredential", task.getException());
-                            Toast.makeText(GoogleSigninActivity.this, getString(R.string.auth_failed), Toast.LENGTH_SHORT).show();
-                        }
-                    }
-                });
+        if (mTrace == null) {
+            // Result delivered to a new instance of the screen, time from here
+            mTrace = AuthTrace.start("google");
+        }
+        mResultDispatcher.dispatchCredential(mBackend, CREDENTIAL, account.getIdToken(), null, mTrace);
     }
 
-    private void updateUI(FirebaseUser user) {
-        if (user != null) {
-            status.setText(getString(R.string.google_status_form, user.getEmail()));
-            detail.setText(getString(R.string.google_detail_form, user.getUid()));
+    private void failTrace(String stage) {
+        if (mTrace != null) {
+            mTrace.fail(stage);
+            mTrace = null;
+        }
+    }
 
-            findViewById(R.id.google_signin_button).setVisibility(View.GONE);
-            findViewById(R.id.signed_layout).setVisibility(View.VISIBLE);
+    private void updateUI(UserSnapshot user) {
+        if (user != null) {
+            mRenderer.render(AuthUiState.signedIn(
+                    getString(R.string.google_status_form, user.getEmail()),
+                    getString(R.string.google_detail_form, user.getUid())));
         } else {
-            status.setText(R.string.sign_out_text);
-            detail.setText(null);
+            mRenderer.render(AuthUiState.signedOut(getString(R.string.sign_out_text), null));
+        }
+    }
 
-            findViewById(R.id.google_signin_button).setVisibility(View.VISIBLE);
-            findViewById(R.id.signed_layout).setVisibility(View.GONE);
+    // Views of R.layout.activity_google_signin, looked up once when the content is set
+    static final class Views {
+        final TextView status;
+        final TextView detail;
+        final View signInButton;
+        final View signOutButton;
+        final View disconnectButton;
+        final View signedLayout;
+
+        Views(View root) {
+            status = (TextView) root.findViewById(R.id.status);
+            detail = (TextView) root.findViewById(R.id.details);
+            signInButton = root.findViewById(R.id.google_signin_button);
+            signOutButton = root.findViewById(R.id.google_signout_button);
+            disconnectButton = root.findViewById(R.id.google_disconnect_button);
+            signedLayout = root.findViewById(R.id.signed_layout);
         }
     }
 }
@@ -0,0 +1,36 @@
+package it.jdark.android.firebase.authentication;
+
+/**
+ * ID token of a signed in user, as returned by {@link AuthBackend#getIdToken(boolean)}.
+ */
+public final class IdToken {
+
+    private final String mUid;
+    private final String mToken;
+    private final long mExpiresAt;
+
+    /**
+     * @param expiresAt expiration time of the token, in milliseconds of the wall clock
+     */
+    public IdToken(String uid, String token, long expiresAt) {
+        mUid = uid;
+        mToken = token;
+        mExpiresAt = expiresAt;
+    }
+
+    public String getUid() {
+        return mUid;
+    }
+
+    public String getToken() {
+        return mToken;
+    }
+
+    public long getExpiresAt() {
+        return mExpiresAt;
+    }
+
+    public boolean isValidAt(long now) {
+        return now < mExpiresAt;
+    }
+}
@@ -0,0 +1,197 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the ID token of the signed in user ready for the calls to our backend.
+ * <p>
+ * The token is fetched as soon as a user signs in, then refreshed on a background scheduler
+ * {@link #REFRESH_MARGIN_MS} before it expires, so {@link #getCachedToken()} hands it out
+ * without blocking and the calls don't pay a token round trip after sign-in or after the
+ * hourly expiry. A failed fetch is retried with a doubling delay. The manager follows the
+ * session for the whole process and is handed out by
+ * {@link AuthSessionManager#getIdTokenManager()}.
+ * <p>
+ * Cache hits and misses are counted by {@link #getHitCount()} and {@link #getMissCount()}
+ * and as the {@link AuthTrace} counters {@code id_token.hits} and {@code id_token.misses};
+ * a call without a signed in user is neither.
+ * The latency of the fetches is recorded in {@code id_token.fetch} and {@code id_token.refresh}.
+ */
+public final class IdTokenManager implements AuthBackend.StateListener {
+
+    private static final String TAG = "IdTokenManager";
+
+    private static final long REFRESH_MARGIN_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long RETRY_BASE_MS = TimeUnit.SECONDS.toMillis(15);
+    private static final long RETRY_MAX_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final AuthBackend mBackend;
+    private final ScheduledExecutorService mScheduler;
+    private final Clock mClock;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    // Guarded by this
+    private String mUid;
+    private IdToken mToken;
+    private Task<IdToken> mPending;
+    private ScheduledFuture<?> mRefresh;
+    private int mFailures;
+
+    @VisibleForTesting
+    IdTokenManager(AuthBackend backend, ScheduledExecutorService scheduler, Clock clock) {
+        mBackend = backend;
+        mScheduler = scheduler;
+        mClock = clock;
+        backend.addStateListener(this);
+        onUserChanged(backend.getCurrentUser());
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * Returns the token of the signed in user if a valid one is cached, otherwise null and a
+     * fetch is started for the next call.
+     */
+    @Nullable
+    public String getCachedToken() {
+        IdToken token = cached();
+        if (token != null) {
+            return token.getToken();
+        }
+        synchronized (this) {
+            if (mUid != null) {
+                fetch(false);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the cached token as a completed task, or the pending fetch of a new one.
+     */
+    public Task<IdToken> getToken() {
+        IdToken token = cached();
+        if (token != null) {
+            return Tasks.forResult(token);
+        }
+        synchronized (this) {
+            if (mUid == null) {
+                return Tasks.forException(new IllegalStateException("No signed in user"));
+            }
+            return fetch(false);
+        }
+    }
+
+    @Override
+    public synchronized void onUserChanged(@Nullable UserSnapshot user) {
+        String uid = user != null ? user.getUid() : null;
+        if (uid == null ? mUid == null : uid.equals(mUid)) {
+            return;
+        }
+        mUid = uid;
+        mToken = null;
+        mPending = null;
+        mFailures = 0;
+        cancelRefresh();
+        if (uid != null) {
+            // Prefetch, the first call after sign-in finds the token ready
+            fetch(false);
+        }
+    }
+
+    @Nullable
+    private IdToken cached() {
+        IdToken token;
+        boolean signedIn;
+        synchronized (this) {
+            token = mToken;
+            signedIn = mUid != null;
+        }
+        if (!signedIn) {
+            return null;
+        }
+        if (token != null && token.isValidAt(mClock.currentTimeMillis())) {
+            mHits.incrementAndGet();
+            AuthTrace.count("id_token.hits");
+            return token;
+        }
+        mMisses.incrementAndGet();
+        AuthTrace.count("id_token.misses");
+        return null;
+    }
+
+    private synchronized Task<IdToken> fetch(final boolean refresh) {
+        if (mPending != null) {
+            return mPending;
+        }
+        final String uid = mUid;
+        final long start = System.nanoTime();
+        final Task<IdToken> task = mBackend.getIdToken(refresh);
+        mPending = task;
+        task.addOnCompleteListener(AuthTasks.DIRECT, new OnCompleteListener<IdToken>() {
+            @Override
+            public void onComplete(@NonNull Task<IdToken> completed) {
+                onFetched(task, uid, refresh, System.nanoTime() - start);
+            }
+        });
+        return task;
+    }
+
+    private synchronized void onFetched(Task<IdToken> task, String uid, boolean refresh, long durationNs) {
+        if (mPending == task) {
+            mPending = null;
+        }
+        if (!uid.equals(mUid)) {
+            // Signed out or switched user in the meantime
+            return;
+        }
+
+        if (task.isSuccessful() && uid.equals(task.getResult().getUid())) {
+            AuthTrace.record(refresh ? "id_token.refresh" : "id_token.fetch", durationNs);
+            mToken = task.getResult();
+            mFailures = 0;
+            scheduleRefresh(mToken.getExpiresAt() - REFRESH_MARGIN_MS - mClock.currentTimeMillis());
+        } else {
+            AuthTrace.count("id_token.failures");
+            AuthLog.w(TAG, "fetch: failed", task.getException());
+            scheduleRefresh(Math.min(RETRY_MAX_MS, RETRY_BASE_MS << Math.min(mFailures++, 8)));
+        }
+    }
+
+    private void scheduleRefresh(long delayMs) {
+        cancelRefresh();
+        mRefresh = mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fetch(true);
+            }
+        }, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelRefresh() {
+        if (mRefresh != null) {
+            mRefresh.cancel(false);
+            mRefresh = null;
+        }
+    }
+}
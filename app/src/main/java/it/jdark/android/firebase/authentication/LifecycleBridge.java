@@ -0,0 +1,42 @@
+package it.jdark.android.firebase.authentication;
+
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.OnLifecycleEvent;
+import android.support.annotation.Nullable;
+import android.support.v7.app.AppCompatActivity;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Reference from a callback handed to a provider SDK back to the screen that registered it.
+ * <p>
+ * The SDKs keep their callbacks in objects that can outlive the screen (the Facebook
+ * CallbackManager, the Twitter auth client, a pending phone verification), so the callbacks
+ * must not be inner classes of the activity. They are static classes holding a bridge
+ * instead: the screen is only weakly reachable through it and is dropped as soon as it is
+ * destroyed, a callback arriving later finds {@link #get()} null and is ignored.
+ */
+public final class LifecycleBridge<T extends AppCompatActivity> implements LifecycleObserver {
+
+    private WeakReference<T> mOwner;
+
+    public LifecycleBridge(T owner) {
+        mOwner = new WeakReference<>(owner);
+        owner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * The screen, or null once it has been destroyed or collected.
+     */
+    @Nullable
+    public T get() {
+        WeakReference<T> owner = mOwner;
+        return owner != null ? owner.get() : null;
+    }
+
+    @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+    void onOwnerDestroyed() {
+        mOwner = null;
+    }
+}
@@ -0,0 +1,176 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.AtomicFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the last signed in {@link UserSnapshot} on disk, so a screen opened in a new process
+ * can render it on its first frame, before the backend reports the current user.
+ * <p>
+ * The file is small and binary: a magic number, a format version, the fields of the snapshot
+ * and a CRC32 of everything before it. A file that is truncated, corrupted or written by
+ * another version is ignored and deleted, the cache then simply starts empty. Writes are
+ * atomic ({@link AtomicFile}) and done on a background thread.
+ */
+final class ProfileCache {
+
+    private static final String TAG = "ProfileCache";
+
+    private static final String FILE_NAME = "profile.bin";
+
+    private static final int MAGIC = 0x41555043; // "AUPC"
+    private static final int VERSION = 1;
+
+    // Bits of the flags byte telling which of the optional fields are present
+    private static final int HAS_EMAIL = 1;
+    private static final int HAS_PHONE_NUMBER = 1 << 1;
+    private static final int HAS_DISPLAY_NAME = 1 << 2;
+    private static final int EMAIL_VERIFIED = 1 << 3;
+
+    private final AtomicFile mFile;
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+
+    ProfileCache(Context context) {
+        mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Reads the cached snapshot, null when there is none or it can't be trusted.
+     */
+    @Nullable
+    UserSnapshot read() {
+        byte[] data;
+        try {
+            data = mFile.readFully();
+        } catch (IOException e) {
+            // No file yet: signed out or first run
+            return null;
+        }
+
+        try {
+            UserSnapshot user = decode(data);
+            if (user == null) {
+                AuthLog.w(TAG, "read: discarding unreadable cache");
+                mFile.delete();
+            }
+            return user;
+        } catch (IOException e) {
+            AuthLog.w(TAG, "read: discarding corrupted cache", e);
+            mFile.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the cached snapshot, or clears the cache when the user is null.
+     */
+    void write(@Nullable final UserSnapshot user) {
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (user == null) {
+                    mFile.delete();
+                } else {
+                    writeNow(user);
+                }
+            }
+        });
+    }
+
+    @WorkerThread
+    private void writeNow(UserSnapshot user) {
+        FileOutputStream out = null;
+        try {
+            byte[] data = encode(user);
+            out = mFile.startWrite();
+            out.write(data);
+            mFile.finishWrite(out);
+        } catch (IOException e) {
+            AuthLog.w(TAG, "write: failed", e);
+            if (out != null) {
+                mFile.failWrite(out);
+            }
+        }
+    }
+
+    static byte[] encode(UserSnapshot user) throws IOException {
+        int flags = 0;
+        if (user.getEmail() != null) {
+            flags |= HAS_EMAIL;
+        }
+        if (user.getPhoneNumber() != null) {
+            flags |= HAS_PHONE_NUMBER;
+        }
+        if (user.getDisplayName() != null) {
+            flags |= HAS_DISPLAY_NAME;
+        }
+        if (user.isEmailVerified()) {
+            flags |= EMAIL_VERIFIED;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(flags);
+        out.writeUTF(user.getUid());
+        if (user.getEmail() != null) {
+            out.writeUTF(user.getEmail());
+        }
+        if (user.getPhoneNumber() != null) {
+            out.writeUTF(user.getPhoneNumber());
+        }
+        if (user.getDisplayName() != null) {
+            out.writeUTF(user.getDisplayName());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a snapshot written by {@link #encode(UserSnapshot)}, null when the data comes
+     * from another format version or doesn't match its checksum.
+     */
+    @Nullable
+    static UserSnapshot decode(byte[] data) throws IOException {
+        // Header, flags, empty uid and checksum
+        if (data.length < 4 + 4 + 1 + 2 + 8) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return null;
+        }
+
+        int flags = in.readUnsignedByte();
+        String uid = in.readUTF();
+        String email = (flags & HAS_EMAIL) != 0 ? in.readUTF() : null;
+        String phoneNumber = (flags & HAS_PHONE_NUMBER) != 0 ? in.readUTF() : null;
+        String displayName = (flags & HAS_DISPLAY_NAME) != 0 ? in.readUTF() : null;
+
+        if (in.available() != 8 || in.readLong() != crc.getValue()) {
+            return null;
+        }
+        return new UserSnapshot(uid, email, phoneNumber, displayName, (flags & EMAIL_VERIFIED) != 0);
+    }
+}
@@ -0,0 +1,108 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rows of the {@link ProviderCatalog} entries in ChooserActivity.
+ * <p>
+ * Ids are stable and a new list is applied with {@link DiffUtil}, only the rows whose entry
+ * changed are bound again. Binding sets the two precomputed strings on the views held by
+ * the {@link Holder}.
+ */
+final class ProviderAdapter extends RecyclerView.Adapter<ProviderAdapter.Holder> {
+
+    interface OnEntryClickListener {
+        void onEntryClick(ProviderCatalog.Entry entry);
+    }
+
+    private final OnEntryClickListener mListener;
+    private List<ProviderCatalog.Entry> mEntries = Collections.emptyList();
+
+    ProviderAdapter(OnEntryClickListener listener) {
+        mListener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Shows the given entries, the list must not be modified afterwards.
+     */
+    void submit(final List<ProviderCatalog.Entry> entries) {
+        final List<ProviderCatalog.Entry> old = mEntries;
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return old.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return entries.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return old.get(oldPosition).getId() == entries.get(newPosition).getId();
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return old.get(oldPosition).sameContentAs(entries.get(newPosition));
+            }
+        });
+        mEntries = entries;
+        diff.dispatchUpdatesTo(this);
+    }
+
+    @Override
+    public Holder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_provider, parent, false);
+        return new Holder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(Holder holder, int position) {
+        ProviderCatalog.Entry entry = mEntries.get(position);
+        holder.title.setText(entry.getTitle());
+        holder.description.setText(entry.getDescription());
+    }
+
+    @Override
+    public int getItemCount() {
+        return mEntries.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mEntries.get(position).getId();
+    }
+
+    // Views of R.layout.item_provider, looked up once per row
+    final class Holder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView title;
+        final TextView description;
+
+        Holder(View itemView) {
+            super(itemView);
+            title = (TextView) itemView.findViewById(android.R.id.text1);
+            description = (TextView) itemView.findViewById(android.R.id.text2);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mListener.onEntryClick(mEntries.get(position));
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+import android.util.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The sign-in screens listed by ChooserActivity, read from the {@code providers.json} asset.
+ * <p>
+ * The asset lists the enabled screens in the order they are shown, a deployment turns a
+ * screen off by removing it or setting {@code "enabled": false}. A screen names the feature
+ * module shipping it ({@code "module"}) and the provider SDK it needs ({@code "sdk"}, a
+ * {@link ProviderRegistry.Provider}); {@code "preload": true} starts that SDK while the list
+ * is on screen. The description is a literal text or an {@code @string/} resource.
+ * <p>
+ * The asset declares its format in {@code "version"}, a catalog of another version is rejected.
+ * A catalog that can't be read is logged and counted in {@code catalog.invalid}, the list falls
+ * back to the email/password screen of the base module.
+ * <p>
+ * The asset is parsed once per process, the parse time is recorded in the {@link AuthTrace}
+ * histogram {@code catalog.parse}. Titles and descriptions are resolved during the parse, so
+ * the list binds plain strings. Every entry has a stable id derived from its key, the list
+ * keeps its rows (and their animations) when entries are added, removed or reordered.
+ */
+public final class ProviderCatalog {
+
+    private static final String TAG = "ProviderCatalog";
+
+    private static final String ASSET = "providers.json";
+    private static final int VERSION = 1;
+    private static final String PACKAGE = "it.jdark.android.firebase.authentication.";
+    private static final String STRING_PREFIX = "@string/";
+
+    private static ProviderCatalog sInstance;
+
+    private final List<Entry> mEntries;
+    private final ProviderRegistry.Provider[] mPreload;
+
+    /**
+     * A sign-in screen and the feature module shipping it.
+     */
+    public static final class Entry {
+
+        private final String mKey;
+        private final long mId;
+        private final String mTitle;
+        private final String mDescription;
+        private final String mClassName;
+        private final String mModule;
+        private final ProviderRegistry.Provider mProvider;
+        private final boolean mPreload;
+
+        public Entry(String key, String title, String description, String className, String module,
+                     ProviderRegistry.Provider provider, boolean preload) {
+            mKey = key;
+            mId = stableId(key);
+            mTitle = title;
+            mDescription = description;
+            mClassName = className;
+            mModule = module;
+            mProvider = provider;
+            mPreload = preload;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public String getTitle() {
+            return mTitle;
+        }
+
+        public String getDescription() {
+            return mDescription;
+        }
+
+        public String getClassName() {
+            return mClassName;
+        }
+
+        /**
+         * The feature module to install before opening the screen, null for the base module.
+         */
+        public String getModule() {
+            return mModule;
+        }
+
+        /**
+         * The provider SDK the screen needs, null when it only uses Firebase.
+         */
+        public ProviderRegistry.Provider getProvider() {
+            return mProvider;
+        }
+
+        public boolean isPreload() {
+            return mPreload;
+        }
+
+        /**
+         * Whether the row showing this entry needs to be bound again.
+         */
+        public boolean sameContentAs(Entry other) {
+            return TextUtils.equals(mTitle, other.mTitle)
+                    && TextUtils.equals(mDescription, other.mDescription);
+        }
+    }
+
+    public static synchronized ProviderCatalog getInstance(Context context) {
+        if (sInstance == null) {
+            Context app = context.getApplicationContext();
+            long start = System.nanoTime();
+            List<Entry> entries;
+            try {
+                entries = parse(app, app.getAssets().open(ASSET));
+            } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+                // The launcher stays usable, the other screens are back with a valid asset
+                AuthLog.w(TAG, "getInstance: invalid " + ASSET, e);
+                AuthTrace.count("catalog.invalid");
+                entries = builtIn(app);
+            }
+            sInstance = new ProviderCatalog(entries);
+            AuthTrace.record("catalog.parse", System.nanoTime() - start);
+        }
+        return sInstance;
+    }
+
+    private ProviderCatalog(List<Entry> entries) {
+        mEntries = Collections.unmodifiableList(entries);
+        List<ProviderRegistry.Provider> preload = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.mPreload && entry.mProvider != null) {
+                preload.add(entry.mProvider);
+            }
+        }
+        mPreload = preload.toArray(new ProviderRegistry.Provider[preload.size()]);
+    }
+
+    /**
+     * The enabled screens, in the order they are listed.
+     */
+    public List<Entry> getEntries() {
+        return mEntries;
+    }
+
+    /**
+     * The SDKs to start before their screen is opened.
+     */
+    public ProviderRegistry.Provider[] getPreloadProviders() {
+        return mPreload.clone();
+    }
+
+    // The screen of the base module without a provider SDK, shown when the asset is broken
+    private static List<Entry> builtIn(Context context) {
+        List<Entry> entries = new ArrayList<>();
+        entries.add(new Entry("email_password", "EmailPasswordActivity",
+                context.getString(R.string.desc_email_and_passwd), PACKAGE + "EmailPasswordActivity",
+                null, null, false));
+        return entries;
+    }
+
+    /**
+     * Reads the enabled entries of a catalog and closes the stream.
+     *
+     * @throws IllegalStateException if the catalog is of an unknown version or malformed
+     */
+    @VisibleForTesting
+    static List<Entry> parse(Context context, InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            List<Entry> entries = new ArrayList<>();
+            int version = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("version".equals(name)) {
+                    version = reader.nextInt();
+                } else if ("providers".equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Entry entry = readEntry(context, reader);
+                        if (entry != null) {
+                            entries.add(entry);
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            // Entries of another version may mean something else, none is shown
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported version " + version);
+            }
+            return entries;
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Null when the entry is disabled
+    private static Entry readEntry(Context context, JsonReader reader) throws IOException {
+        String key = null;
+        String activity = null;
+        String module = null;
+        String description = null;
+        ProviderRegistry.Provider provider = null;
+        boolean preload = false;
+        boolean enabled = true;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "key":
+                    key = reader.nextString();
+                    break;
+                case "activity":
+                    activity = reader.nextString();
+                    break;
+                case "module":
+                    module = reader.nextString();
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    break;
+                case "sdk":
+                    provider = ProviderRegistry.Provider.valueOf(reader.nextString());
+                    break;
+                case "preload":
+                    preload = reader.nextBoolean();
+                    break;
+                case "enabled":
+                    enabled = reader.nextBoolean();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (key == null || activity == null) {
+            throw new IllegalStateException("Entry without key or activity");
+        }
+        if (!enabled) {
+            return null;
+        }
+        return new Entry(key, activity, resolve(context, description), PACKAGE + activity, module,
+                provider, preload);
+    }
+
+    private static String resolve(Context context, String description) {
+        if (description == null || !description.startsWith(STRING_PREFIX)) {
+            return description;
+        }
+        Resources resources = context.getResources();
+        int id = resources.getIdentifier(description.substring(STRING_PREFIX.length()), "string",
+                context.getPackageName());
+        if (id == 0) {
+            throw new IllegalStateException("Unknown string " + description);
+        }
+        return resources.getString(id);
+    }
+
+    // 64-bit FNV-1a of the key, collisions between a few dozen keys are not a concern
+    private static long stableId(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
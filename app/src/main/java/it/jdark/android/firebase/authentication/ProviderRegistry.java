@@ -0,0 +1,169 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.v4.os.TraceCompat;
+
+import com.google.android.gms.auth.api.signin.GoogleSignIn;
+import com.google.android.gms.auth.api.signin.GoogleSignInClient;
+import com.google.android.gms.auth.api.signin.GoogleSignInOptions;
+
+import java.util.Locale;
+
+/**
+ * Starts the identity provider SDKs on demand.
+ * <p>
+ * Every SDK is initialized at most once per process, the first time its screen is opened,
+ * or earlier on a background thread when {@link #warmUp(Provider...)} is called.
+ * Each initialization runs inside a trace section named {@code Provider.<name>} so the
+ * cost is visible in a systrace/perfetto capture of the app startup. Every provider has its
+ * own lock, a screen asking for one SDK never waits for the warm up of another.
+ * <p>
+ * The Facebook and Twitter SDKs ship in their own feature modules: they are started by an
+ * {@link Initializer} of the module, looked up by name, and skipped while the module is not
+ * installed.
+ */
+public final class ProviderRegistry {
+
+    public enum Provider {
+        GOOGLE(null),
+        FACEBOOK("it.jdark.android.firebase.authentication.FacebookInitializer"),
+        TWITTER("it.jdark.android.firebase.authentication.TwitterInitializer");
+
+        // Initializer of the feature module shipping the SDK, null for the base module
+        final String mInitializer;
+
+        Provider(String initializer) {
+            mInitializer = initializer;
+        }
+    }
+
+    /**
+     * Starts the SDK of a feature module, implementations need a public no-arg constructor.
+     */
+    public interface Initializer {
+        void initialize(Context context);
+    }
+
+    private static final String TAG = "ProviderRegistry";
+
+    private static ProviderRegistry sInstance;
+
+    private final Context mContext;
+
+    // Indexed by Provider.ordinal(), each lock guards the state of its provider
+    private final Object[] mLocks = new Object[Provider.values().length];
+    private final boolean[] mReady = new boolean[Provider.values().length];
+
+    // Guarded by the lock of GOOGLE
+    private GoogleSignInOptions mGoogleSignInOptions;
+    private GoogleSignInClient mGoogleSignInClient;
+
+    public static synchronized ProviderRegistry getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ProviderRegistry(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ProviderRegistry(Context context) {
+        mContext = context;
+        for (int i = 0; i < mLocks.length; i++) {
+            mLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Initializes the given providers on a background thread, the screens calling the
+     * {@code ensure} methods later will find them ready (or wait for their own warm up to end).
+     */
+    public void warmUp(final Provider... providers) {
+        AuthExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Provider provider : providers) {
+                    ensure(provider);
+                }
+            }
+        });
+    }
+
+    public void ensure(Provider provider) {
+        if (provider == Provider.GOOGLE) {
+            getGoogleSignInClient();
+        } else {
+            ensureModule(provider);
+        }
+    }
+
+    public GoogleSignInOptions getGoogleSignInOptions() {
+        synchronized (lock(Provider.GOOGLE)) {
+            if (mGoogleSignInOptions == null) {
+                long start = begin("Provider.google");
+                try {
+                    mGoogleSignInOptions = new GoogleSignInOptions.Builder(GoogleSignInOptions.DEFAULT_SIGN_IN)
+                            .requestIdToken(mContext.getString(R.string.default_web_client_id))
+                            .requestEmail()
+                            .build();
+                } finally {
+                    end(Provider.GOOGLE, start);
+                }
+            }
+            return mGoogleSignInOptions;
+        }
+    }
+
+    /**
+     * Returns the Google sign-in client of the process, shared by every GoogleSigninActivity
+     * instance: it is bound to the application context, not to a screen, so rotations and
+     * re-entries reuse it instead of connecting to Play Services again.
+     */
+    public GoogleSignInClient getGoogleSignInClient() {
+        synchronized (lock(Provider.GOOGLE)) {
+            if (mGoogleSignInClient == null) {
+                mGoogleSignInClient = GoogleSignIn.getClient(mContext, getGoogleSignInOptions());
+            }
+            return mGoogleSignInClient;
+        }
+    }
+
+    private void ensureModule(Provider provider) {
+        synchronized (lock(provider)) {
+            if (mReady[provider.ordinal()]) {
+                return;
+            }
+            Initializer initializer;
+            try {
+                initializer = (Initializer) Class.forName(provider.mInitializer).newInstance();
+            } catch (ClassNotFoundException e) {
+                // The module is not installed (yet), its screen will start the SDK
+                AuthLog.d(TAG, "ensure " + provider + ": module not installed");
+                return;
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+
+            long start = begin("Provider." + provider.name().toLowerCase(Locale.US));
+            try {
+                initializer.initialize(mContext);
+                mReady[provider.ordinal()] = true;
+            } finally {
+                end(provider, start);
+            }
+        }
+    }
+
+    private Object lock(Provider provider) {
+        return mLocks[provider.ordinal()];
+    }
+
+    private static long begin(String section) {
+        TraceCompat.beginSection(section);
+        return SystemClock.elapsedRealtime();
+    }
+
+    private static void end(Provider provider, long start) {
+        TraceCompat.endSection();
+        AuthLog.d(TAG, "init " + provider + " -> " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+}
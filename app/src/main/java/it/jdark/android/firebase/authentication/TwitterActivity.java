@@ -1,163 +0,0 @@
-package it.jdark.android.firebase.authentication;
-
-import android.content.Intent;
-import android.os.Bundle;
-import android.support.annotation.NonNull;
-import android.support.v7.app.AppCompatActivity;
-import android.util.Log;
-import android.view.View;
-import android.widget.TextView;
-import android.widget.Toast;
-
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
-import com.google.firebase.auth.AuthCredential;
-import com.google.firebase.auth.AuthResult;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseAuthUserCollisionException;
-import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.auth.TwitterAuthProvider;
-import com.twitter.sdk.android.Twitter;
-import com.twitter.sdk.android.core.Callback;
-import com.twitter.sdk.android.core.Result;
-import com.twitter.sdk.android.core.TwitterAuthConfig;
-import com.twitter.sdk.android.core.TwitterException;
-import com.twitter.sdk.android.core.TwitterSession;
-import com.twitter.sdk.android.core.identity.TwitterLoginButton;
-
-import io.fabric.sdk.android.Fabric;
-
-public class TwitterActivity extends AppCompatActivity implements View.OnClickListener {
-
-    private final String TAG = getClass().getSimpleName();
-
-    private FirebaseAuth mAuth;
-    private FirebaseAuth.AuthStateListener mAuthListener;
-
-    private TextView status, detail;
-
-    private TwitterLoginButton mLoginButton;
-
-    @Override
-    protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        TwitterAuthConfig authConfig = new TwitterAuthConfig(getString(R.string.twitter_consumer_key), getString(R.string.twitter_consumer_secret));
-        Fabric.with(this, new Twitter(authConfig));
-
-        setContentView(R.layout.activity_twitter);
-
-        status = (TextView) findViewById(R.id.status);
-        detail = (TextView) findViewById(R.id.details);
-        findViewById(R.id.sign_out_button).setOnClickListener(this);
-
-        mAuth = FirebaseAuth.getInstance();
-        mAuthListener = new FirebaseAuth.AuthStateListener() {
-            @Override
-            public void onAuthStateChanged(@NonNull FirebaseAuth firebaseAuth) {
-                FirebaseUser user = firebaseAuth.getCurrentUser();
-                if (user != null) {
-                    // User is signed in
-                    Log.d(TAG, "onAuthStateChanged: signed_in -> " + user.getUid());
-                } else {
-                    // User is signed out
-                    Log.d(TAG, "onAuthStateChanged: signed_out");
-                }
-                updateUI(user);
-            }
-        };
-
-        mLoginButton = (TwitterLoginButton) findViewById(R.id.sign_in_twitter_button);
-        mLoginButton.setCallback(new Callback<TwitterSession>() {
-            @Override
-            public void success(Result<TwitterSession> result) {
-                Log.d(TAG, "success: -> Login " + result);
-                handleTwitterSession(result.data);
-            }
-
-            @Override
-            public void failure(TwitterException exception) {
-                Log.w(TAG, "failure: -> Not login ", exception);
-                updateUI(null);
-            }
-        });
-
-    }
-
-    @Override
-    protected void onStart() {
-        super.onStart();
-        if (mAuthListener != null) {
-            mAuth.addAuthStateListener(mAuthListener);
-        }
-    }
-
-    @Override
-    protected void onStop() {
-        super.onStop();
-        if (mAuthListener != null) {
-            mAuth.removeAuthStateListener(mAuthListener);
-        }
-    }
-
-    @Override
-    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
-        mLoginButton.onActivityResult(requestCode, resultCode, data);
-    }
-
-    @Override
-    public void onClick(View v) {
-        int i = v.getId();
-        if (i == R.id.sign_out_button) {
-            signOut();
-        }
-    }
-
-    private void handleTwitterSession(TwitterSession data) {
-        AuthCredential credential = TwitterAuthProvider.getCredential(data.getAuthToken().token, data.getAuthToken().secret);
-
-        mAuth.signInWithCredential(credential).addOnCompleteListener(new OnCompleteListener<AuthResult>() {
-            @Override
-            public void onComplete(@NonNull Task<AuthResult> task) {
-                Log.d(TAG, "onComplete: signInWithCredential -> " + task.isSuccessful());
-                if (!task.isSuccessful()) {
-                    if (task.getException() instanceof FirebaseAuthUserCollisionException) {
-                        Log.w(TAG, "onComplete: signInWithCredential -> " + "EMAIL ALREADY USED!");
-                        Toast.makeText(TwitterActivity.this, "Email Used already with different credential.", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Log.w(TAG, "signInWithCredential", task.getException());
-                        Toast.makeText(TwitterActivity.this, "Authentication failed.", Toast.LENGTH_SHORT).show();
-                    }
-                    updateUI(null);
-                    signOut();
-                }
-            }
-        });
-    }
-
-    private void signOut() {
-        mAuth.signOut();
-        Twitter.logOut();
-
-        updateUI(null);
-    }
-
-    private void updateUI(FirebaseUser user) {
-        if (user != null) {
-            // Signed in
-            status.setText(getString(R.string.twitter_status_form, user.getEmail()));
-            detail.setText(getString(R.string.twitter_detail_form, user.getUid()));
-
-            findViewById(R.id.sign_in_twitter_button).setVisibility(View.GONE);
-            findViewById(R.id.sign_out_button).setVisibility(View.VISIBLE);
-        } else {
-            // Signed out
-            status.setText(R.string.sign_out_text);
-            detail.setText(R.string.detail_empty_text);
-
-            findViewById(R.id.sign_in_twitter_button).setVisibility(View.VISIBLE);
-            findViewById(R.id.sign_out_button).setVisibility(View.GONE);
-        }
-    }
-
-}
@@ -0,0 +1,90 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.google.firebase.auth.FirebaseUser;
+
+/**
+ * Immutable copy of the fields of a {@link FirebaseUser} that the screens render.
+ * <p>
+ * {@link FirebaseUser} is a live object that changes under our feet, so the session keeps
+ * this snapshot instead and compares it to decide whether observers have to be notified.
+ */
+public final class UserSnapshot {
+
+    private final String mUid;
+    private final String mEmail;
+    private final String mPhoneNumber;
+    private final String mDisplayName;
+    private final boolean mEmailVerified;
+
+    public UserSnapshot(String uid, String email, String phoneNumber, String displayName,
+                        boolean emailVerified) {
+        mUid = uid;
+        mEmail = email;
+        mPhoneNumber = phoneNumber;
+        mDisplayName = displayName;
+        mEmailVerified = emailVerified;
+    }
+
+    @Nullable
+    public static UserSnapshot from(@Nullable FirebaseUser user) {
+        if (user == null) {
+            return null;
+        }
+        return new UserSnapshot(user.getUid(), user.getEmail(), user.getPhoneNumber(),
+                user.getDisplayName(), user.isEmailVerified());
+    }
+
+    public String getUid() {
+        return mUid;
+    }
+
+    public String getEmail() {
+        return mEmail;
+    }
+
+    public String getPhoneNumber() {
+        return mPhoneNumber;
+    }
+
+    public String getDisplayName() {
+        return mDisplayName;
+    }
+
+    public boolean isEmailVerified() {
+        return mEmailVerified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UserSnapshot)) {
+            return false;
+        }
+        UserSnapshot other = (UserSnapshot) o;
+        return mEmailVerified == other.mEmailVerified
+                && TextUtils.equals(mUid, other.mUid)
+                && TextUtils.equals(mEmail, other.mEmail)
+                && TextUtils.equals(mPhoneNumber, other.mPhoneNumber)
+                && TextUtils.equals(mDisplayName, other.mDisplayName);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mUid != null ? mUid.hashCode() : 0;
+        result = 31 * result + (mEmail != null ? mEmail.hashCode() : 0);
+        result = 31 * result + (mPhoneNumber != null ? mPhoneNumber.hashCode() : 0);
+        result = 31 * result + (mDisplayName != null ? mDisplayName.hashCode() : 0);
+        result = 31 * result + (mEmailVerified ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "UserSnapshot{uid=" + mUid + "}";
+    }
+}
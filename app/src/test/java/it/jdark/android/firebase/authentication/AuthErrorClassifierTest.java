@@ -0,0 +1,102 @@
+package it.jdark.android.firebase.authentication;
+
+import com.google.firebase.FirebaseException;
+import com.google.firebase.FirebaseNetworkException;
+import com.google.firebase.FirebaseTooManyRequestsException;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseAuthInvalidCredentialsException;
+import com.google.firebase.auth.FirebaseAuthInvalidUserException;
+import com.google.firebase.auth.FirebaseAuthUserCollisionException;
+import com.google.firebase.auth.FirebaseAuthWeakPasswordException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AuthErrorClassifierTest {
+
+    // Error code of the backend, expected error
+    private static final Object[][] CODES = {
+            {"ERROR_EMAIL_ALREADY_IN_USE", AuthError.USER_COLLISION},
+            {"ERROR_CREDENTIAL_ALREADY_IN_USE", AuthError.USER_COLLISION},
+            {"ERROR_ACCOUNT_EXISTS_WITH_DIFFERENT_CREDENTIAL", AuthError.USER_COLLISION},
+            {"ERROR_INVALID_CREDENTIAL", AuthError.INVALID_CREDENTIAL},
+            {"ERROR_INVALID_EMAIL", AuthError.INVALID_CREDENTIAL},
+            {"ERROR_WRONG_PASSWORD", AuthError.INVALID_CREDENTIAL},
+            {"ERROR_INVALID_CUSTOM_TOKEN", AuthError.INVALID_CREDENTIAL},
+            {"ERROR_CUSTOM_TOKEN_MISMATCH", AuthError.INVALID_CREDENTIAL},
+            {"ERROR_USER_NOT_FOUND", AuthError.INVALID_USER},
+            {"ERROR_USER_DISABLED", AuthError.INVALID_USER},
+            {"ERROR_USER_TOKEN_EXPIRED", AuthError.INVALID_USER},
+            {"ERROR_INVALID_USER_TOKEN", AuthError.INVALID_USER},
+            {"ERROR_USER_MISMATCH", AuthError.INVALID_USER},
+            {"ERROR_WEAK_PASSWORD", AuthError.WEAK_PASSWORD},
+            {"ERROR_INVALID_PHONE_NUMBER", AuthError.INVALID_PHONE_NUMBER},
+            {"ERROR_MISSING_PHONE_NUMBER", AuthError.INVALID_PHONE_NUMBER},
+            {"ERROR_INVALID_VERIFICATION_ID", AuthError.INVALID_VERIFICATION_ID},
+            {"ERROR_MISSING_VERIFICATION_ID", AuthError.INVALID_VERIFICATION_ID},
+            {"ERROR_INVALID_VERIFICATION_CODE", AuthError.INVALID_VERIFICATION_CODE},
+            {"ERROR_MISSING_VERIFICATION_CODE", AuthError.INVALID_VERIFICATION_CODE},
+            {"ERROR_SESSION_EXPIRED", AuthError.INVALID_VERIFICATION_CODE},
+            {"ERROR_OPERATION_NOT_ALLOWED", AuthError.PROVIDER_DISABLED},
+            {"ERROR_APP_NOT_AUTHORIZED", AuthError.PROVIDER_DISABLED},
+            {"ERROR_QUOTA_EXCEEDED", AuthError.TOO_MANY_REQUESTS},
+            {"ERROR_TOO_MANY_REQUESTS", AuthError.TOO_MANY_REQUESTS},
+            {"ERROR_NETWORK_REQUEST_FAILED", AuthError.NETWORK}
+    };
+
+    @Test
+    public void errorCodes() {
+        for (Object[] code : CODES) {
+            assertEquals((String) code[0], code[1],
+                    AuthErrorClassifier.classify(new FirebaseAuthException((String) code[0], "message")));
+        }
+    }
+
+    @Test
+    public void errorCodeWinsOverClass() {
+        // Same class for every verification failure, told apart by the code
+        assertEquals(AuthError.INVALID_VERIFICATION_CODE, AuthErrorClassifier.classify(
+                new FirebaseAuthInvalidCredentialsException("ERROR_INVALID_VERIFICATION_CODE", "message")));
+        assertEquals(AuthError.INVALID_PHONE_NUMBER, AuthErrorClassifier.classify(
+                new FirebaseAuthInvalidCredentialsException("ERROR_INVALID_PHONE_NUMBER", "message")));
+    }
+
+    @Test
+    public void unknownCodeFallsBackToClass() {
+        assertEquals(AuthError.USER_COLLISION, AuthErrorClassifier.classify(
+                new FirebaseAuthUserCollisionException("ERROR_NEW_CODE", "message")));
+        assertEquals(AuthError.WEAK_PASSWORD, AuthErrorClassifier.classify(
+                new FirebaseAuthWeakPasswordException("ERROR_NEW_CODE", "message", "reason")));
+        assertEquals(AuthError.INVALID_CREDENTIAL, AuthErrorClassifier.classify(
+                new FirebaseAuthInvalidCredentialsException("ERROR_NEW_CODE", "message")));
+        assertEquals(AuthError.INVALID_USER, AuthErrorClassifier.classify(
+                new FirebaseAuthInvalidUserException("ERROR_NEW_CODE", "message")));
+        assertEquals(AuthError.UNKNOWN, AuthErrorClassifier.classify(
+                new FirebaseAuthException("ERROR_NEW_CODE", "message")));
+    }
+
+    @Test
+    public void otherExceptionsByClass() {
+        assertEquals(AuthError.TOO_MANY_REQUESTS,
+                AuthErrorClassifier.classify(new FirebaseTooManyRequestsException("message")));
+        assertEquals(AuthError.NETWORK, AuthErrorClassifier.classify(new FirebaseNetworkException("message")));
+        // Subclasses resolve like their parent, from the cache the second time
+        for (int i = 0; i < 2; i++) {
+            assertEquals(AuthError.NETWORK, AuthErrorClassifier.classify(new OfflineException()));
+        }
+    }
+
+    @Test
+    public void fallback() {
+        assertEquals(AuthError.UNKNOWN, AuthErrorClassifier.classify(null));
+        assertEquals(AuthError.UNKNOWN, AuthErrorClassifier.classify(new FirebaseException("message")));
+        assertEquals(AuthError.UNKNOWN, AuthErrorClassifier.classify(new IllegalStateException("message")));
+    }
+
+    private static final class OfflineException extends FirebaseNetworkException {
+        OfflineException() {
+            super("offline");
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package it.jdark.android.firebase.authentication;
+
+import android.app.Activity;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.auth.AuthCredential;
+import com.google.firebase.auth.PhoneAuthProvider;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class CoalescingAuthBackendTest {
+
+    private static final UserSnapshot USER = new UserSnapshot("uid", "user@example.com", null, null, true);
+
+    private final RecordingBackend mDelegate = new RecordingBackend();
+    private final CoalescingAuthBackend mBackend = new CoalescingAuthBackend(mDelegate);
+
+    @Test
+    public void joinsPendingIdenticalRequest() {
+        Task<UserSnapshot> first = signIn("user@example.com", "secret", new CancellationTokenSource());
+        Task<UserSnapshot> second = signIn("user@example.com", "secret", new CancellationTokenSource());
+
+        assertEquals(1, mDelegate.mCalls.size());
+        assertEquals(1, mBackend.getStartedCount());
+        assertEquals(1, mBackend.getCoalescedCount());
+
+        mDelegate.mCalls.get(0).setResult(USER);
+        assertSame(USER, first.getResult());
+        assertSame(USER, second.getResult());
+    }
+
+    @Test
+    public void doesNotJoinDifferentRequests() {
+        signIn("user@example.com", "secret", new CancellationTokenSource());
+        signIn("user@example.com", "other", new CancellationTokenSource());
+        signIn("other@example.com", "secret", new CancellationTokenSource());
+        mBackend.createUserWithEmailAndPassword("user@example.com", "secret",
+                new CancellationTokenSource().getToken());
+
+        assertEquals(4, mDelegate.mCalls.size());
+        assertEquals(0, mBackend.getCoalescedCount());
+    }
+
+    @Test
+    public void doesNotJoinCompletedRequest() {
+        signIn("user@example.com", "secret", new CancellationTokenSource());
+        mDelegate.mCalls.get(0).setResult(USER);
+
+        Task<UserSnapshot> second = signIn("user@example.com", "secret", new CancellationTokenSource());
+        assertEquals(2, mDelegate.mCalls.size());
+        assertFalse(second.isComplete());
+    }
+
+    @Test
+    public void failureReachesEveryCallerAndClearsTheRequest() {
+        Task<UserSnapshot> first = signIn("user@example.com", "secret", new CancellationTokenSource());
+        Task<UserSnapshot> second = signIn("user@example.com", "secret", new CancellationTokenSource());
+        IllegalStateException failure = new IllegalStateException("offline");
+        mDelegate.mCalls.get(0).setException(failure);
+
+        assertSame(failure, first.getException());
+        assertSame(failure, second.getException());
+
+        signIn("user@example.com", "secret", new CancellationTokenSource());
+        assertEquals(2, mDelegate.mCalls.size());
+    }
+
+    @Test
+    public void throwingDelegateClearsTheRequest() {
+        mDelegate.mThrow = true;
+        try {
+            signIn("user@example.com", "secret", new CancellationTokenSource());
+        } catch (IllegalStateException expected) {
+            // The next call gets a new request
+        }
+        mDelegate.mThrow = false;
+
+        Task<UserSnapshot> retry = signIn("user@example.com", "secret", new CancellationTokenSource());
+        mDelegate.mCalls.get(0).setResult(USER);
+        assertSame(USER, retry.getResult());
+    }
+
+    @Test
+    public void forwardsCredentialsAndVerifications() {
+        mBackend.signInWithCredential(null, new CancellationTokenSource().getToken());
+        mBackend.signInWithCredential(null, new CancellationTokenSource().getToken());
+        mBackend.verifyPhoneNumber("+15555550100", 60, TimeUnit.SECONDS, null, null, null);
+        mBackend.verifyPhoneNumber("+15555550100", 60, TimeUnit.SECONDS, null, null, null);
+
+        assertEquals(2, mDelegate.mCalls.size());
+        assertEquals(2, mDelegate.mVerifications);
+        assertEquals(0, mBackend.getCoalescedCount());
+    }
+
+    private Task<UserSnapshot> signIn(String email, String password, CancellationTokenSource cancellation) {
+        return mBackend.signInWithEmailAndPassword(email, password, cancellation.getToken());
+    }
+
+    // Records the requests and leaves them pending until the test completes them
+    private static final class RecordingBackend implements AuthBackend {
+
+        final List<TaskCompletionSource<UserSnapshot>> mCalls = new ArrayList<>();
+        int mVerifications;
+        boolean mThrow;
+
+        @Nullable
+        @Override
+        public UserSnapshot getCurrentUser() {
+            return null;
+        }
+
+        @Override
+        public void addStateListener(@NonNull StateListener listener) {
+        }
+
+        @Override
+        public void removeStateListener(@NonNull StateListener listener) {
+        }
+
+        @Override
+        public Task<UserSnapshot> signInWithEmailAndPassword(String email, String password,
+                                                             @NonNull CancellationToken cancellation) {
+            return record();
+        }
+
+        @Override
+        public Task<UserSnapshot> createUserWithEmailAndPassword(String email, String password,
+                                                                 @NonNull CancellationToken cancellation) {
+            return record();
+        }
+
+        @Override
+        public Task<UserSnapshot> signInWithCredential(AuthCredential credential,
+                                                       @NonNull CancellationToken cancellation) {
+            return record();
+        }
+
+        @Override
+        public Task<Void> sendEmailVerification() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Task<IdToken> getIdToken(boolean forceRefresh) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void verifyPhoneNumber(String phoneNumber, long timeout, TimeUnit unit, Activity activity,
+                                      PhoneAuthProvider.OnVerificationStateChangedCallbacks callbacks,
+                                      @Nullable PhoneAuthProvider.ForceResendingToken token) {
+            mVerifications++;
+        }
+
+        @Override
+        public void signOut() {
+        }
+
+        private Task<UserSnapshot> record() {
+            if (mThrow) {
+                throw new IllegalStateException("Not ready");
+            }
+            TaskCompletionSource<UserSnapshot> call = new TaskCompletionSource<>();
+            mCalls.add(call);
+            return call.getTask();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package it.jdark.android.firebase.authentication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CredentialValidatorTest {
+
+    private final CredentialValidator mValidator =
+            new CredentialValidator(new DomainTrie("mailinator.com", "yopmail.com"));
+
+    @Test
+    public void acceptsWellFormedEmails() {
+        assertEmail(CredentialValidator.Result.VALID, "user@example.com");
+        assertEmail(CredentialValidator.Result.VALID, "first.last+tag@mail.example.co.uk");
+        assertEmail(CredentialValidator.Result.VALID, "o'brien_{x}@ex-ample.io");
+        assertEmail(CredentialValidator.Result.VALID, "a@b.c0m");
+    }
+
+    @Test
+    public void refusesMalformedEmails() {
+        assertEmail(CredentialValidator.Result.REQUIRED, "");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "@example.com");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user@");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user@example");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user@example.com.");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user@example..com");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user@-example.com");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user@example-.com");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user@127.0.0.1");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, ".user@example.com");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user.@example.com");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "us..er@example.com");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "us er@example.com");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user@exa@mple.com");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user@example.com ");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, repeat('a', 65) + "@example.com");
+        assertEmail(CredentialValidator.Result.MALFORMED_EMAIL, "user@" + repeat('a', 64) + ".com");
+    }
+
+    @Test
+    public void flagsDisposableDomainsAndSubdomains() {
+        assertEmail(CredentialValidator.Result.DISPOSABLE_EMAIL, "user@mailinator.com");
+        assertEmail(CredentialValidator.Result.DISPOSABLE_EMAIL, "user@MailInator.COM");
+        assertEmail(CredentialValidator.Result.DISPOSABLE_EMAIL, "user@eu.yopmail.com");
+        assertEmail(CredentialValidator.Result.VALID, "user@notmailinator.com");
+        assertEmail(CredentialValidator.Result.VALID, "user@mailinator.com.example.org");
+    }
+
+    @Test
+    public void checksPasswordLength() {
+        assertEquals(CredentialValidator.Result.REQUIRED, mValidator.checkPassword(""));
+        assertEquals(CredentialValidator.Result.SHORT_PASSWORD, mValidator.checkPassword("12345"));
+        assertEquals(CredentialValidator.Result.VALID, mValidator.checkPassword("123456"));
+    }
+
+    @Test
+    public void domainTrieMatchesWholeLabels() {
+        DomainTrie trie = new DomainTrie("b.com", "ab.com", "com.br");
+        assertTrue(trie.matches("b.com", 0, 5));
+        assertTrue(trie.matches("x.ab.com", 0, 8));
+        assertTrue(trie.matches("user@x.b.com", 5, 12));
+        assertFalse(trie.matches("cab.com", 0, 7));
+        assertFalse(trie.matches("com", 0, 3));
+        assertTrue(trie.matches("b.com.br", 0, 8));
+    }
+
+    @Test
+    public void countsAvoidedRequests() {
+        assertEquals(0f, mValidator.getAvoidedRate(), 0f);
+        mValidator.onSubmit(true);
+        mValidator.onSubmit(false);
+        mValidator.onSubmit(false);
+        mValidator.onSubmit(true);
+        assertEquals(2, mValidator.getSentCount());
+        assertEquals(2, mValidator.getAvoidedCount());
+        assertEquals(0.5f, mValidator.getAvoidedRate(), 0f);
+    }
+
+    private void assertEmail(CredentialValidator.Result expected, String email) {
+        assertEquals(email, expected, mValidator.checkEmail(email));
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,240 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.FirebaseException;
+import com.google.firebase.FirebaseNetworkException;
+import com.google.firebase.auth.FirebaseAuthInvalidCredentialsException;
+import com.google.firebase.auth.FirebaseAuthUserCollisionException;
+import com.google.firebase.auth.GoogleAuthProvider;
+import com.google.firebase.auth.PhoneAuthCredential;
+import com.google.firebase.auth.PhoneAuthProvider;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the fake through the sign-in and verification flows on the JVM. The callbacks run
+ * on the thread completing the calls; cancellation is not covered, the listeners of a
+ * {@link CancellationTokenSource} run on the main looper.
+ */
+public class FakeAuthBackendTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private final FakeAuthBackend mBackend = builder().build();
+    private final List<UserSnapshot> mStates = new ArrayList<>();
+
+    public FakeAuthBackendTest() {
+        mBackend.addStateListener(new AuthBackend.StateListener() {
+            @Override
+            public void onUserChanged(@Nullable UserSnapshot user) {
+                synchronized (mStates) {
+                    mStates.add(user);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void signInCreatesUnknownAccount() throws Exception {
+        UserSnapshot user = await(signIn(mBackend, "user@example.com", "secret")).getResult();
+
+        assertEquals("user@example.com", user.getEmail());
+        assertEquals(user, mBackend.getCurrentUser());
+        assertEquals(user, lastState());
+        // Same account on the next sign in
+        assertEquals(user, await(signIn(mBackend, "user@example.com", "secret")).getResult());
+    }
+
+    @Test
+    public void wrongPasswordIsRejected() throws Exception {
+        await(signIn(mBackend, "user@example.com", "secret"));
+
+        Task<UserSnapshot> task = await(signIn(mBackend, "user@example.com", "wrong"));
+        assertEquals("ERROR_WRONG_PASSWORD",
+                ((FirebaseAuthInvalidCredentialsException) task.getException()).getErrorCode());
+    }
+
+    @Test
+    public void existingAccountCollides() throws Exception {
+        assertTrue(await(mBackend.createUserWithEmailAndPassword("user@example.com", "secret",
+                token())).isSuccessful());
+
+        Task<UserSnapshot> task = await(mBackend.createUserWithEmailAndPassword("user@example.com", "other",
+                token()));
+        assertEquals("ERROR_EMAIL_ALREADY_IN_USE",
+                ((FirebaseAuthUserCollisionException) task.getException()).getErrorCode());
+    }
+
+    @Test
+    public void signOutNotifiesListeners() throws Exception {
+        await(signIn(mBackend, "user@example.com", "secret"));
+        mBackend.signOut();
+
+        assertNull(mBackend.getCurrentUser());
+        assertEquals(2, mStates.size());
+        assertNull(lastState());
+    }
+
+    @Test
+    public void providerCredentialSignsIn() throws Exception {
+        UserSnapshot user = await(mBackend.signInWithCredential(GoogleAuthProvider.getCredential("id-token", null),
+                token())).getResult();
+
+        assertEquals("fake-google.com", user.getUid());
+        assertEquals(user, lastState());
+    }
+
+    @Test
+    public void idTokenNeedsUserAndIsReusedUntilRefreshed() throws Exception {
+        assertFalse(await(mBackend.getIdToken(false)).isSuccessful());
+
+        UserSnapshot user = await(signIn(mBackend, "user@example.com", "secret")).getResult();
+        IdToken first = await(mBackend.getIdToken(false)).getResult();
+        assertEquals(user.getUid(), first.getUid());
+        assertEquals(first.getToken(), await(mBackend.getIdToken(false)).getResult().getToken());
+        assertNotEquals(first.getToken(), await(mBackend.getIdToken(true)).getResult().getToken());
+    }
+
+    @Test
+    public void verificationSendsCodeAndSignsIn() throws Exception {
+        Verification verification = verify(mBackend, "+393331234567");
+        assertNull(verification.mCompleted);
+
+        PhoneAuthCredential credential = PhoneAuthProvider.getCredential(verification.mVerificationId, "123456");
+        UserSnapshot user = await(mBackend.signInWithCredential(credential, token())).getResult();
+        assertEquals("+393331234567", user.getPhoneNumber());
+    }
+
+    @Test
+    public void wrongCodeIsRejected() throws Exception {
+        Verification verification = verify(mBackend, "+393331234567");
+
+        PhoneAuthCredential credential = PhoneAuthProvider.getCredential(verification.mVerificationId, "000000");
+        Task<UserSnapshot> task = await(mBackend.signInWithCredential(credential, token()));
+        assertEquals("ERROR_INVALID_VERIFICATION_CODE",
+                ((FirebaseAuthInvalidCredentialsException) task.getException()).getErrorCode());
+        assertNull(mBackend.getCurrentUser());
+    }
+
+    @Test
+    public void autoRetrievalCompletesVerification() throws Exception {
+        FakeAuthBackend backend = builder().setAutoRetrieval(true).setSmsCode("654321").build();
+        Verification verification = verify(backend, "+393331234567");
+
+        assertTrue("Code not retrieved", verification.mRetrieved.await(5, TimeUnit.SECONDS));
+        assertEquals("654321", verification.mCompleted.getSmsCode());
+    }
+
+    @Test
+    public void injectedFailuresReachCallbacks() throws Exception {
+        FakeAuthBackend backend = builder().setFailureRate(1).build();
+
+        assertTrue(await(signIn(backend, "user@example.com", "secret")).getException()
+                instanceof FirebaseNetworkException);
+        assertTrue(verify(backend, "+393331234567").mFailure instanceof FirebaseNetworkException);
+    }
+
+    @Test
+    public void sameSeedGivesSameFailures() throws Exception {
+        FakeAuthBackend first = builder().setFailureRate(0.5).setSeed(7).build();
+        FakeAuthBackend second = builder().setFailureRate(0.5).setSeed(7).build();
+
+        boolean failed = false;
+        boolean succeeded = false;
+        for (int i = 0; i < 20; i++) {
+            boolean outcome = await(signIn(first, "user@example.com", "secret")).isSuccessful();
+            assertEquals(outcome, await(signIn(second, "user@example.com", "secret")).isSuccessful());
+            failed |= !outcome;
+            succeeded |= outcome;
+        }
+        assertTrue(failed && succeeded);
+    }
+
+    private static FakeAuthBackend.Builder builder() {
+        return new FakeAuthBackend.Builder().setCallbackExecutor(DIRECT);
+    }
+
+    private static Task<UserSnapshot> signIn(FakeAuthBackend backend, String email, String password) {
+        return backend.signInWithEmailAndPassword(email, password, token());
+    }
+
+    private static CancellationToken token() {
+        return new CancellationTokenSource().getToken();
+    }
+
+    private UserSnapshot lastState() {
+        synchronized (mStates) {
+            return mStates.get(mStates.size() - 1);
+        }
+    }
+
+    // Tasks.await refuses to run where no main looper can be told apart
+    private static <T> Task<T> await(Task<T> task) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        task.addOnCompleteListener(DIRECT, new OnCompleteListener<T>() {
+            @Override
+            public void onComplete(@NonNull Task<T> task) {
+                done.countDown();
+            }
+        });
+        assertTrue("Call not completed", done.await(5, TimeUnit.SECONDS));
+        return task;
+    }
+
+    private static Verification verify(FakeAuthBackend backend, String phoneNumber) throws InterruptedException {
+        Verification verification = new Verification();
+        backend.verifyPhoneNumber(phoneNumber, 60, TimeUnit.SECONDS, null, verification, null);
+        assertTrue("Code not sent", verification.mSent.await(5, TimeUnit.SECONDS));
+        return verification;
+    }
+
+    private static final class Verification extends PhoneAuthProvider.OnVerificationStateChangedCallbacks {
+
+        final CountDownLatch mSent = new CountDownLatch(1);
+        final CountDownLatch mRetrieved = new CountDownLatch(1);
+        volatile String mVerificationId;
+        volatile PhoneAuthCredential mCompleted;
+        volatile FirebaseException mFailure;
+
+        @Override
+        public void onCodeSent(String verificationId, PhoneAuthProvider.ForceResendingToken token) {
+            mVerificationId = verificationId;
+            mSent.countDown();
+        }
+
+        @Override
+        public void onVerificationCompleted(PhoneAuthCredential credential) {
+            mCompleted = credential;
+            mRetrieved.countDown();
+        }
+
+        @Override
+        public void onVerificationFailed(FirebaseException e) {
+            mFailure = e;
+            mSent.countDown();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package it.jdark.android.firebase.authentication;
+
+import android.app.Activity;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.auth.AuthCredential;
+import com.google.firebase.auth.PhoneAuthProvider;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IdTokenManagerTest {
+
+    private static final UserSnapshot USER = new UserSnapshot("uid", "user@example.com", null, null, true);
+    private static final UserSnapshot OTHER_USER = new UserSnapshot("other", "other@example.com", null, null, true);
+
+    private static final long START = 1500000000000L;
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long MARGIN_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final TokenBackend mBackend = new TokenBackend();
+    private final ManualScheduler mScheduler = new ManualScheduler();
+    private final TestClock mClock = new TestClock();
+
+    public IdTokenManagerTest() {
+        mClock.mNow = START;
+    }
+
+    @After
+    public void tearDown() {
+        mScheduler.shutdownNow();
+    }
+
+    @Test
+    public void prefetchesOnSignIn() {
+        mBackend.mUser = USER;
+        IdTokenManager manager = manager();
+
+        assertEquals(1, mBackend.mFetches.size());
+        mBackend.complete(0, token("uid", "first", START + HOUR_MS));
+
+        assertEquals("first", manager.getCachedToken());
+        assertEquals(1, manager.getHitCount());
+        assertEquals(0, manager.getMissCount());
+    }
+
+    @Test
+    public void signedOutIsNotAMiss() {
+        IdTokenManager manager = manager();
+
+        assertNull(manager.getCachedToken());
+        assertFalse(manager.getToken().isSuccessful());
+        assertEquals(0, manager.getHitCount());
+        assertEquals(0, manager.getMissCount());
+        assertTrue(mBackend.mFetches.isEmpty());
+    }
+
+    @Test
+    public void missWhileFetchIsPending() {
+        mBackend.mUser = USER;
+        IdTokenManager manager = manager();
+
+        assertNull(manager.getCachedToken());
+        Task<IdToken> pending = manager.getToken();
+
+        assertEquals(2, manager.getMissCount());
+        // The calls join the prefetch
+        assertEquals(1, mBackend.mFetches.size());
+        IdToken token = token("uid", "first", START + HOUR_MS);
+        mBackend.complete(0, token);
+        assertSame(token, pending.getResult());
+    }
+
+    @Test
+    public void expiredTokenIsAMissAndFetchedAgain() {
+        mBackend.mUser = USER;
+        IdTokenManager manager = manager();
+        mBackend.complete(0, token("uid", "first", START + HOUR_MS));
+
+        mClock.mNow = START + HOUR_MS;
+        assertNull(manager.getCachedToken());
+        assertEquals(1, manager.getMissCount());
+        assertEquals(2, mBackend.mFetches.size());
+
+        mBackend.complete(1, token("uid", "second", START + 2 * HOUR_MS));
+        assertEquals("second", manager.getCachedToken());
+    }
+
+    @Test
+    public void refreshesBeforeExpiry() {
+        mBackend.mUser = USER;
+        IdTokenManager manager = manager();
+        mBackend.complete(0, token("uid", "first", START + HOUR_MS));
+
+        assertEquals(HOUR_MS - MARGIN_MS, mScheduler.lastDelay());
+        mClock.mNow = START + HOUR_MS - MARGIN_MS;
+        mScheduler.runLast();
+        assertTrue(mBackend.mRefresh.get(1));
+
+        mBackend.complete(1, token("uid", "refreshed", mClock.mNow + HOUR_MS));
+        assertEquals("refreshed", manager.getCachedToken());
+        assertEquals(HOUR_MS - MARGIN_MS, mScheduler.lastDelay());
+    }
+
+    @Test
+    public void failedFetchIsRetriedWithBackoff() {
+        mBackend.mUser = USER;
+        IdTokenManager manager = manager();
+
+        mBackend.fail(0);
+        assertEquals(TimeUnit.SECONDS.toMillis(15), mScheduler.lastDelay());
+        mScheduler.runLast();
+        mBackend.fail(1);
+        assertEquals(TimeUnit.SECONDS.toMillis(30), mScheduler.lastDelay());
+        mScheduler.runLast();
+
+        mBackend.complete(2, token("uid", "first", START + HOUR_MS));
+        assertEquals("first", manager.getCachedToken());
+    }
+
+    @Test
+    public void tokenOfPreviousUserIsDropped() {
+        mBackend.mUser = USER;
+        IdTokenManager manager = manager();
+
+        manager.onUserChanged(OTHER_USER);
+        mBackend.complete(0, token("uid", "first", START + HOUR_MS));
+        assertNull(manager.getCachedToken());
+
+        mBackend.complete(1, token("other", "second", START + HOUR_MS));
+        assertEquals("second", manager.getCachedToken());
+
+        manager.onUserChanged(null);
+        assertNull(manager.getCachedToken());
+        assertEquals(1, manager.getMissCount());
+    }
+
+    private IdTokenManager manager() {
+        return new IdTokenManager(mBackend, mScheduler, mClock);
+    }
+
+    private static IdToken token(String uid, String token, long expiresAt) {
+        return new IdToken(uid, token, expiresAt);
+    }
+
+    // Records the scheduled commands, the test runs them
+    private static final class ManualScheduler extends ScheduledThreadPoolExecutor {
+
+        private static final Runnable NOTHING = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        final List<Runnable> mCommands = new ArrayList<>();
+        final List<Long> mDelays = new ArrayList<>();
+
+        ManualScheduler() {
+            super(1);
+        }
+
+        @NonNull
+        @Override
+        public ScheduledFuture<?> schedule(@NonNull Runnable command, long delay, @NonNull TimeUnit unit) {
+            mCommands.add(command);
+            mDelays.add(unit.toMillis(delay));
+            return super.schedule(NOTHING, 1, TimeUnit.DAYS);
+        }
+
+        long lastDelay() {
+            return mDelays.get(mDelays.size() - 1);
+        }
+
+        void runLast() {
+            mCommands.get(mCommands.size() - 1).run();
+        }
+    }
+
+    // Leaves the token fetches pending until the test completes them
+    private static final class TokenBackend implements AuthBackend {
+
+        final List<TaskCompletionSource<IdToken>> mFetches = new ArrayList<>();
+        final List<Boolean> mRefresh = new ArrayList<>();
+        UserSnapshot mUser;
+
+        void complete(int fetch, IdToken token) {
+            mFetches.get(fetch).setResult(token);
+        }
+
+        void fail(int fetch) {
+            mFetches.get(fetch).setException(new IllegalStateException("offline"));
+        }
+
+        @Nullable
+        @Override
+        public UserSnapshot getCurrentUser() {
+            return mUser;
+        }
+
+        @Override
+        public void addStateListener(@NonNull StateListener listener) {
+        }
+
+        @Override
+        public void removeStateListener(@NonNull StateListener listener) {
+        }
+
+        @Override
+        public Task<UserSnapshot> signInWithEmailAndPassword(String email, String password,
+                                                             @NonNull CancellationToken cancellation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Task<UserSnapshot> createUserWithEmailAndPassword(String email, String password,
+                                                                 @NonNull CancellationToken cancellation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Task<UserSnapshot> signInWithCredential(AuthCredential credential,
+                                                       @NonNull CancellationToken cancellation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Task<Void> sendEmailVerification() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Task<IdToken> getIdToken(boolean forceRefresh) {
+            TaskCompletionSource<IdToken> fetch = new TaskCompletionSource<>();
+            mFetches.add(fetch);
+            mRefresh.add(forceRefresh);
+            return fetch.getTask();
+        }
+
+        @Override
+        public void verifyPhoneNumber(String phoneNumber, long timeout, TimeUnit unit, Activity activity,
+                                      PhoneAuthProvider.OnVerificationStateChangedCallbacks callbacks,
+                                      @Nullable PhoneAuthProvider.ForceResendingToken token) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void signOut() {
+        }
+    }
+
+    private static final class TestClock implements Clock {
+        long mNow;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package it.jdark.android.firebase.authentication;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ProfileCacheTest {
+
+    private static final UserSnapshot USER =
+            new UserSnapshot("uid", "user@example.com", "+393331234567", "Jane Doe", true);
+
+    @Test
+    public void roundTrip() throws Exception {
+        assertEquals(USER, ProfileCache.decode(ProfileCache.encode(USER)));
+    }
+
+    @Test
+    public void roundTripWithoutOptionalFields() throws Exception {
+        UserSnapshot user = new UserSnapshot("uid", null, null, null, false);
+        assertEquals(user, ProfileCache.decode(ProfileCache.encode(user)));
+    }
+
+    @Test
+    public void emptyInputIsRejected() throws Exception {
+        assertNull(ProfileCache.decode(new byte[0]));
+    }
+
+    @Test
+    public void truncatedInputIsRejected() throws Exception {
+        byte[] data = ProfileCache.encode(USER);
+        for (int length = 0; length < data.length; length++) {
+            assertRejected("length " + length, Arrays.copyOf(data, length));
+        }
+    }
+
+    @Test
+    public void trailingDataIsRejected() throws Exception {
+        byte[] data = ProfileCache.encode(USER);
+        assertRejected("trailing byte", Arrays.copyOf(data, data.length + 1));
+    }
+
+    @Test
+    public void bitFlipsAreRejected() throws Exception {
+        byte[] data = ProfileCache.encode(USER);
+        for (int bit = 0; bit < data.length * 8; bit++) {
+            byte[] flipped = data.clone();
+            flipped[bit / 8] ^= 1 << (bit % 8);
+            assertRejected("bit " + bit, flipped);
+        }
+    }
+
+    @Test
+    public void otherVersionIsRejected() throws Exception {
+        byte[] data = ProfileCache.encode(USER);
+        // Version 2, with a valid checksum
+        data[7] = 2;
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 8);
+        long value = crc.getValue();
+        for (int i = 0; i < 8; i++) {
+            data[data.length - 1 - i] = (byte) (value >>> (8 * i));
+        }
+        assertNull(ProfileCache.decode(data));
+    }
+
+    // Rejected data decodes to null or fails to parse, never to a snapshot
+    private static void assertRejected(String message, byte[] data) {
+        try {
+            assertNull(message, ProfileCache.decode(data));
+        } catch (IOException expected) {
+            // Malformed string or premature end
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package it.jdark.android.firebase.authentication.benchmark;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Collects the samples of one benchmark class and writes them as JSON.
+ * <p>
+ * The report is saved as {@code benchmark/<suite>.json} in the external files dir of the
+ * test package and every metric is also sent as instrumentation status, so it can be read
+ * from the {@code am instrument -r} output without pulling files from the device.
+ * The version of the app under test is part of the report, so two runs made before and
+ * after a dependency bump can be compared directly.
+ */
+final class BenchmarkReport {
+
+    private static final String TAG = "BenchmarkReport";
+
+    // Status code used for the metrics, away from the ones used by the JUnit runner
+    private static final int STATUS_METRIC = 2;
+
+    private final String mSuite;
+    private final JSONObject mMetrics = new JSONObject();
+
+    BenchmarkReport(String suite) {
+        mSuite = suite;
+    }
+
+    /**
+     * Records the samples of a metric, along with their min, median and max.
+     */
+    synchronized void record(String metric, String unit, long... samples) {
+        long[] sorted = Arrays.copyOf(samples, samples.length);
+        Arrays.sort(sorted);
+        long min = sorted[0];
+        long median = sorted[sorted.length / 2];
+        long max = sorted[sorted.length - 1];
+
+        try {
+            JSONArray values = new JSONArray();
+            for (long sample : samples) {
+                values.put(sample);
+            }
+            mMetrics.put(metric, new JSONObject()
+                    .put("unit", unit)
+                    .put("min", min)
+                    .put("median", median)
+                    .put("max", max)
+                    .put("samples", values));
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Bundle status = new Bundle();
+        status.putString("metric", mSuite + "." + metric);
+        status.putString("unit", unit);
+        status.putLong("min", min);
+        status.putLong("median", median);
+        status.putLong("max", max);
+        InstrumentationRegistry.getInstrumentation().sendStatus(STATUS_METRIC, status);
+        Log.i(TAG, mSuite + "." + metric + " median=" + median + unit + " min=" + min + unit + " max=" + max + unit);
+    }
+
+    synchronized void write(TargetApp app) throws IOException, JSONException {
+        Context context = InstrumentationRegistry.getContext();
+        JSONObject report = new JSONObject()
+                .put("suite", mSuite)
+                .put("timestamp", System.currentTimeMillis())
+                .put("device", new JSONObject()
+                        .put("model", Build.MODEL)
+                        .put("sdk", Build.VERSION.SDK_INT)
+                        .put("fingerprint", Build.FINGERPRINT))
+                .put("target", target(context, app.packageName))
+                .put("metrics", mMetrics);
+
+        File dir = new File(context.getExternalFilesDir(null), "benchmark");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File file = new File(dir, mSuite + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(report.toString(2));
+        } finally {
+            writer.close();
+        }
+        Log.i(TAG, "report -> " + file);
+    }
+
+    private static JSONObject target(Context context, String packageName) throws JSONException {
+        JSONObject target = new JSONObject().put("package", packageName);
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(packageName, 0);
+            target.put("versionName", info.versionName)
+                    .put("versionCode", info.versionCode)
+                    .put("lastUpdateTime", info.lastUpdateTime);
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "target not installed: " + packageName);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,64 @@
+package it.jdark.android.firebase.authentication.benchmark;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Time to first frame of every sign-in screen listed by ChooserActivity, opened from the
+ * chooser right after a cold start of the process.
+ */
+@RunWith(Parameterized.class)
+public class FirstFrameBenchmark {
+
+    private static final BenchmarkReport sReport = new BenchmarkReport("first_frame");
+
+    private static TargetApp sApp;
+
+    // Same entries and order as ChooserActivity.SCREENS: {row title, activity name}
+    @Parameterized.Parameters(name = "{1}")
+    public static Collection<Object[]> screens() {
+        return Arrays.asList(new Object[][]{
+                {"EmailPasswordActivity", "EmailPasswordActivity"},
+                {"GoogleSigninActivity", "GoogleSigninActivity"},
+                {"FirebaseUIActivity", "FirebaseUIActivity"},
+                {"FacebookActivity", "FacebookActivity"},
+                {"TwitterActivity", "TwitterActivity"},
+                {"PhoneActivity", "PhoneActivity"}
+        });
+    }
+
+    private final String mTitle;
+    private final String mActivityName;
+
+    public FirstFrameBenchmark(String title, String activityName) {
+        mTitle = title;
+        mActivityName = activityName;
+    }
+
+    @BeforeClass
+    public static void setUp() {
+        sApp = TargetApp.fromArguments();
+    }
+
+    @AfterClass
+    public static void writeReport() throws Exception {
+        sReport.write(sApp);
+    }
+
+    @Test
+    public void firstFrame() throws Exception {
+        long[] samples = new long[sApp.iterations];
+        for (int i = 0; i < samples.length; i++) {
+            sApp.forceStop();
+            sApp.startChooser();
+            samples[i] = sApp.openFromChooser(mTitle, mActivityName);
+        }
+        sReport.record(mActivityName, "ms", samples);
+    }
+}
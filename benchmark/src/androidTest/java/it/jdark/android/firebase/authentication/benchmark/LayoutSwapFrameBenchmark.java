@@ -0,0 +1,88 @@
+package it.jdark.android.firebase.authentication.benchmark;
+
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.test.uiautomator.By;
+import android.support.test.uiautomator.Until;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Frame timing of EmailPasswordActivity while updateUI swaps the signed in and the signed
+ * out layouts.
+ * <p>
+ * Every iteration signs in with the {@code email}/{@code password} instrumentation
+ * arguments and signs out again, then the frame statistics collected by
+ * {@code dumpsys gfxinfo} are recorded. The sign-in must be answered without network:
+ * the app has to be installed in its "benchmark" build type.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LayoutSwapFrameBenchmark {
+
+    private static final BenchmarkReport sReport = new BenchmarkReport("layout_swap");
+
+    private static final String[][] GFXINFO_METRICS = new String[][]{
+            {"frames", "Total frames rendered: (\\d+)"},
+            {"janky_frames", "Janky frames: (\\d+)"},
+            {"frame_p50", "50th percentile: (\\d+)ms"},
+            {"frame_p90", "90th percentile: (\\d+)ms"},
+            {"frame_p95", "95th percentile: (\\d+)ms"},
+            {"frame_p99", "99th percentile: (\\d+)ms"}
+    };
+
+    private static TargetApp sApp;
+
+    @BeforeClass
+    public static void setUp() {
+        sApp = TargetApp.fromArguments();
+    }
+
+    @AfterClass
+    public static void writeReport() throws Exception {
+        sReport.write(sApp);
+    }
+
+    @Test
+    public void emailPasswordLayoutSwap() throws Exception {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        String email = arguments.getString("email", "benchmark@example.com");
+        String password = arguments.getString("password", "benchmark");
+
+        sApp.forceStop();
+        sApp.startChooser();
+        sApp.openFromChooser("EmailPasswordActivity", "EmailPasswordActivity");
+
+        // Start from the signed out layout
+        if (sApp.device.hasObject(By.res(sApp.packageName, "signed_layout"))) {
+            sApp.waitForView("email_passowrd_signout_btn").click();
+        }
+        sApp.waitForView("inputs_layout");
+        sApp.shell("dumpsys gfxinfo " + sApp.packageName + " reset");
+
+        for (int i = 0; i < sApp.iterations; i++) {
+            sApp.waitForView("email_input_field").setText(email);
+            sApp.waitForView("password_input_field").setText(password);
+            sApp.waitForView("email_password_signin_btn").click();
+            sApp.waitForView("signed_layout");
+
+            sApp.waitForView("email_passowrd_signout_btn").click();
+            sApp.device.wait(Until.hasObject(By.res(sApp.packageName, "inputs_layout")), TargetApp.TIMEOUT_MS);
+        }
+
+        String gfxinfo = sApp.shell("dumpsys gfxinfo " + sApp.packageName);
+        for (String[] metric : GFXINFO_METRICS) {
+            Matcher matcher = Pattern.compile(metric[1]).matcher(gfxinfo);
+            if (matcher.find()) {
+                sReport.record(metric[0], metric[0].startsWith("frame_p") ? "ms" : "count",
+                        Long.parseLong(matcher.group(1)));
+            }
+        }
+    }
+}
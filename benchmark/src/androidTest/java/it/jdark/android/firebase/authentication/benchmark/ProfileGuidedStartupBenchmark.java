@@ -0,0 +1,160 @@
+package it.jdark.android.firebase.authentication.benchmark;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.test.uiautomator.By;
+import android.support.test.uiautomator.Until;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cold startup of ChooserActivity without a profile, then compiled with the ART profile
+ * recorded while walking the sign-in journeys.
+ * <p>
+ * The app is first reset to its install state ({@code cmd package compile --reset}), timed,
+ * then driven through every screen of the chooser and an email sign-in and sign-out. The
+ * profile collected by ART during the journeys is flushed and the app compiled with it
+ * ({@code speed-profile}), the same compilation a baseline profile gets at install time,
+ * before timing the startup again. Needs API 24 and the "benchmark" build type.
+ * <p>
+ * The shell can only signal the app to write its profile when adbd runs as root
+ * ({@code adb root}); otherwise the benchmark waits for the periodic save of the ART profile
+ * saver. Either way the profile is read back with {@code cmd package dump-profiles} and the
+ * test fails if it holds no method of the app, rather than timing an unprofiled compilation.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProfileGuidedStartupBenchmark {
+
+    private static final BenchmarkReport sReport = new BenchmarkReport("profile_guided_startup");
+
+    // Same titles as ChooserActivity.SCREENS
+    private static final String[] SCREENS = new String[]{
+            "EmailPasswordActivity",
+            "GoogleSigninActivity",
+            "FirebaseUIActivity",
+            "FacebookActivity",
+            "TwitterActivity",
+            "PhoneActivity"
+    };
+
+    private static final int JOURNEYS = 3;
+
+    // The profile saver of ART writes at most every 40 seconds
+    private static final long PROFILE_TIMEOUT_MS = 3 * 60 * 1000;
+    private static final long PROFILE_POLL_MS = 5000;
+    private static final String PROFMAN_DIR = "/data/misc/profman/";
+    // Methods of the app in the text dump of the profile
+    private static final String APP_METHODS = "Lit/jdark/android/firebase/authentication/";
+
+    private static TargetApp sApp;
+
+    @BeforeClass
+    public static void setUp() {
+        Assume.assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N);
+        sApp = TargetApp.fromArguments();
+    }
+
+    @AfterClass
+    public static void writeReport() throws Exception {
+        if (sApp != null) {
+            // Leave the app as installed for the other suites
+            sApp.shell("cmd package compile --reset " + sApp.packageName);
+            sReport.write(sApp);
+        }
+    }
+
+    @Test
+    public void coldStartupWithProfile() throws Exception {
+        sApp.shell("cmd package compile --reset " + sApp.packageName);
+        sReport.record("chooser_cold_no_profile", "ms", coldStartups());
+
+        for (int i = 0; i < JOURNEYS; i++) {
+            walkJourneys();
+        }
+        assertTrue("No ART profile of " + sApp.packageName + " was saved", awaitProfile());
+        sApp.shell("cmd package compile -f -m speed-profile " + sApp.packageName);
+        sReport.record("chooser_cold_speed_profile", "ms", coldStartups());
+    }
+
+    // Waits for the profile collected so far to be on disk, asking ART to write it when root
+    private static boolean awaitProfile() throws IOException {
+        boolean root = "0".equals(sApp.shell("id -u").trim());
+        long deadline = SystemClock.uptimeMillis() + PROFILE_TIMEOUT_MS;
+        while (SystemClock.uptimeMillis() < deadline) {
+            String pid = sApp.shell("pidof " + sApp.packageName).trim();
+            if (pid.isEmpty()) {
+                // Without the process nothing else will be saved
+                return dumpProfile().contains(APP_METHODS);
+            }
+            if (root) {
+                sApp.shell("kill -s SIGUSR1 " + pid);
+                SystemClock.sleep(1000);
+            }
+            if (dumpProfile().contains(APP_METHODS)) {
+                return true;
+            }
+            SystemClock.sleep(PROFILE_POLL_MS);
+        }
+        return false;
+    }
+
+    // Text dump of the current profile, named <package>.txt or <package>-primary.prof.txt
+    private static String dumpProfile() throws IOException {
+        StringBuilder profile = new StringBuilder();
+        for (String file : sApp.shell("ls " + PROFMAN_DIR).split("\\s+")) {
+            if (file.startsWith(sApp.packageName)) {
+                sApp.shell("rm " + PROFMAN_DIR + file);
+            }
+        }
+        sApp.shell("cmd package dump-profiles " + sApp.packageName);
+        for (String file : sApp.shell("ls " + PROFMAN_DIR).split("\\s+")) {
+            if (file.startsWith(sApp.packageName)) {
+                profile.append(sApp.shell("cat " + PROFMAN_DIR + file));
+            }
+        }
+        return profile.toString();
+    }
+
+    private static long[] coldStartups() throws Exception {
+        long[] samples = new long[sApp.iterations];
+        for (int i = 0; i < samples.length; i++) {
+            sApp.forceStop();
+            samples[i] = sApp.startChooser();
+        }
+        return samples;
+    }
+
+    private static void walkJourneys() throws Exception {
+        sApp.forceStop();
+        sApp.startChooser();
+        for (String screen : SCREENS) {
+            sApp.openFromChooser(screen, screen);
+            sApp.device.pressBack();
+            sApp.device.waitForIdle();
+        }
+
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        sApp.openFromChooser("EmailPasswordActivity", "EmailPasswordActivity");
+        if (sApp.device.hasObject(By.res(sApp.packageName, "signed_layout"))) {
+            sApp.waitForView("email_passowrd_signout_btn").click();
+        }
+        sApp.waitForView("email_input_field").setText(arguments.getString("email", "benchmark@example.com"));
+        sApp.waitForView("password_input_field").setText(arguments.getString("password", "benchmark"));
+        sApp.waitForView("email_password_signin_btn").click();
+        sApp.waitForView("signed_layout");
+        sApp.waitForView("email_passowrd_signout_btn").click();
+        sApp.device.wait(Until.hasObject(By.res(sApp.packageName, "inputs_layout")), TargetApp.TIMEOUT_MS);
+        sApp.device.pressBack();
+    }
+}
@@ -0,0 +1,72 @@
+package it.jdark.android.firebase.authentication.benchmark;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Cold, warm and hot startup time of ChooserActivity.
+ * <ul>
+ * <li>cold: the process is killed before every launch</li>
+ * <li>warm: the process is alive but the activity has been finished with back</li>
+ * <li>hot: the activity is alive in background after a home press</li>
+ * </ul>
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final BenchmarkReport sReport = new BenchmarkReport("startup");
+
+    private static TargetApp sApp;
+
+    @BeforeClass
+    public static void setUp() {
+        sApp = TargetApp.fromArguments();
+    }
+
+    @AfterClass
+    public static void writeReport() throws Exception {
+        sReport.write(sApp);
+    }
+
+    @Test
+    public void coldStartup() throws Exception {
+        long[] samples = new long[sApp.iterations];
+        for (int i = 0; i < samples.length; i++) {
+            sApp.forceStop();
+            samples[i] = sApp.startChooser();
+        }
+        sReport.record("chooser_cold", "ms", samples);
+    }
+
+    @Test
+    public void warmStartup() throws Exception {
+        sApp.forceStop();
+        sApp.startChooser();
+
+        long[] samples = new long[sApp.iterations];
+        for (int i = 0; i < samples.length; i++) {
+            sApp.device.pressBack();
+            sApp.device.waitForIdle();
+            samples[i] = sApp.startChooser();
+        }
+        sReport.record("chooser_warm", "ms", samples);
+    }
+
+    @Test
+    public void hotStartup() throws Exception {
+        sApp.forceStop();
+        sApp.startChooser();
+
+        long[] samples = new long[sApp.iterations];
+        for (int i = 0; i < samples.length; i++) {
+            sApp.device.pressHome();
+            sApp.device.waitForIdle();
+            samples[i] = sApp.startChooser();
+        }
+        sReport.record("chooser_hot", "ms", samples);
+    }
+}
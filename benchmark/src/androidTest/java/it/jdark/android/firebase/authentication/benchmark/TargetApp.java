@@ -0,0 +1,104 @@
+package it.jdark.android.firebase.authentication.benchmark;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.uiautomator.By;
+import android.support.test.uiautomator.UiDevice;
+import android.support.test.uiautomator.UiObject2;
+import android.support.test.uiautomator.Until;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives the application under test from the benchmark process.
+ * <p>
+ * The target package and the number of iterations come from the instrumentation
+ * arguments {@code targetPackage} and {@code iterations}.
+ */
+final class TargetApp {
+
+    static final long TIMEOUT_MS = 10000;
+
+    private static final Pattern TOTAL_TIME = Pattern.compile("TotalTime: (\\d+)");
+
+    final String packageName;
+    final int iterations;
+    final UiDevice device;
+
+    private TargetApp(String packageName, int iterations, UiDevice device) {
+        this.packageName = packageName;
+        this.iterations = iterations;
+        this.device = device;
+    }
+
+    static TargetApp fromArguments() {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        String packageName = arguments.getString("targetPackage", "it.jdark.android.firebase.authentication");
+        int iterations = Integer.parseInt(arguments.getString("iterations", "10"));
+        return new TargetApp(packageName, iterations,
+                UiDevice.getInstance(InstrumentationRegistry.getInstrumentation()));
+    }
+
+    String shell(String command) throws IOException {
+        return device.executeShellCommand(command);
+    }
+
+    void forceStop() throws IOException {
+        shell("am force-stop " + packageName);
+    }
+
+    /**
+     * Starts ChooserActivity and waits for its first frame.
+     *
+     * @return the launch time reported by the activity manager, in milliseconds
+     */
+    long startChooser() throws IOException {
+        String output = shell("am start -W -n " + packageName + "/.ChooserActivity");
+        Matcher matcher = TOTAL_TIME.matcher(output);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Unexpected am start output: " + output);
+        }
+        device.wait(Until.hasObject(By.pkg(packageName).depth(0)), TIMEOUT_MS);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**
+     * Taps the chooser row with the given title and waits for the "Displayed" line that the
+     * activity manager logs once the first frame of the new activity has been drawn.
+     *
+     * @return the time to first frame of the activity, in milliseconds
+     */
+    long openFromChooser(String title, String activityName) throws IOException {
+        shell("logcat -c");
+        UiObject2 row = device.wait(Until.findObject(By.text(title)), TIMEOUT_MS);
+        if (row == null) {
+            throw new IllegalStateException("No chooser entry for " + title);
+        }
+        row.click();
+
+        Pattern displayed = Pattern.compile("Displayed " + Pattern.quote(packageName) + "/\\S*"
+                + Pattern.quote(activityName) + ": \\+(?:(\\d+)s)?(\\d+)ms");
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        while (SystemClock.uptimeMillis() < deadline) {
+            Matcher matcher = displayed.matcher(
+                    shell("logcat -d -s ActivityManager:I ActivityTaskManager:I"));
+            if (matcher.find()) {
+                long seconds = matcher.group(1) != null ? Long.parseLong(matcher.group(1)) : 0;
+                return seconds * 1000 + Long.parseLong(matcher.group(2));
+            }
+            SystemClock.sleep(100);
+        }
+        throw new IllegalStateException(activityName + " was not displayed");
+    }
+
+    UiObject2 waitForView(String resourceId) {
+        UiObject2 view = device.wait(Until.findObject(By.res(packageName, resourceId)), TIMEOUT_MS);
+        if (view == null) {
+            throw new IllegalStateException("View not shown: " + resourceId);
+        }
+        return view;
+    }
+}
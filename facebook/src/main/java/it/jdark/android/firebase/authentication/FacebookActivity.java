@@ -0,0 +1,249 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.facebook.AccessToken;
+import com.facebook.CallbackManager;
+import com.facebook.FacebookCallback;
+import com.facebook.FacebookException;
+import com.facebook.login.LoginManager;
+import com.facebook.login.LoginResult;
+import com.facebook.login.widget.LoginButton;
+import com.google.android.play.core.splitcompat.SplitCompat;
+import com.google.firebase.auth.AuthCredential;
+import com.google.firebase.auth.FacebookAuthProvider;
+
+import it.jdark.android.firebase.authentication.facebook.R;
+
+public class FacebookActivity extends AppCompatActivity implements View.OnClickListener,
+        AuthSessionManager.Observer, AuthResultDispatcher.Callback {
+
+    private final String TAG = getClass().getSimpleName();
+
+    private static final AuthResultDispatcher.CredentialFactory CREDENTIAL =
+            new AuthResultDispatcher.CredentialFactory() {
+                @Override
+                public AuthCredential create(String accessToken, String unused) {
+                    return FacebookAuthProvider.getCredential(accessToken);
+                }
+            };
+
+    private CallbackManager callbackManager;
+    private AuthBackend mBackend;
+    private AuthResultDispatcher mResultDispatcher;
+
+    private Views mViews;
+    private AuthUiRenderer mRenderer;
+    private AuthTrace.Flow mTrace;
+
+
+    @Override
+    protected void attachBaseContext(Context newBase) {
+        super.attachBaseContext(newBase);
+        // Classes and resources of this module, when it was installed on demand
+        SplitCompat.installActivity(this);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        ProviderRegistry.getInstance(this).ensure(ProviderRegistry.Provider.FACEBOOK);
+        setContentView(R.layout.activity_facebook);
+        mViews = new Views(findViewById(android.R.id.content));
+        mRenderer = new AuthUiRenderer.Builder(mViews.status, mViews.detail)
+                .signedInViews(mViews.signOutButton)
+                .signedOutViews(mViews.signInButton)
+                .build();
+
+        mViews.signOutButton.setOnClickListener(this);
+
+
+        mBackend = AuthBackends.get();
+        mResultDispatcher = new AuthResultDispatcher(this, this);
+
+
+        callbackManager = CallbackManager.Factory.create();
+
+
+        final LoginButton loginButton = mViews.signInButton;
+        loginButton.setReadPermissions("email", "public_profile");
+        // Called after the button started the Facebook login
+        loginButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (mTrace == null) {
+                    mTrace = AuthTrace.start("facebook");
+                }
+            }
+        });
+        loginButton.registerCallback(callbackManager, new LoginCallback(new LifecycleBridge<>(this)));
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        AuthSessionManager.getInstance(this).addObserver(this);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        AuthSessionManager.getInstance(this).removeObserver(this);
+    }
+
+    @Override
+    public void onSessionChanged(UserSnapshot user) {
+        if (user != null) {
+            // User is signed in
+            AuthLog.d(TAG, "onSessionChanged: signed_in -> " + user.getUid());
+        } else {
+            // User is signed out
+            AuthLog.d(TAG, "onSessionChanged: signed_out");
+        }
+        updateUI(user);
+    }
+
+    @Override
+    public void onAuthSucceeded(UserSnapshot user) {
+        if (mTrace != null) {
+            mTrace.stage("sign_in_with_credential");
+        }
+        updateUI(user);
+        if (mTrace != null) {
+            mTrace.endOnNextFrame(mViews.status, "first_update_ui");
+            mTrace = null;
+        }
+    }
+
+    @Override
+    public void onAuthFailed(AuthError error) {
+        failTrace("sign_in_with_credential");
+        signOut();
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        callbackManager.onActivityResult(requestCode, resultCode, data);
+    }
+
+
+    private void onLoginSucceeded(LoginResult loginResult) {
+        AuthLog.d(TAG, "onSuccess: LoginResult -> " + loginResult.getAccessToken());
+        if (mTrace != null) {
+            mTrace.stage("provider_login");
+        }
+        handleFacebookAccessToken(loginResult.getAccessToken());
+    }
+
+    private void onLoginCancelled() {
+        Toast.makeText(getApplicationContext(), "Authentication Cancel by User!", Toast.LENGTH_LONG).show();
+        AuthLog.d(TAG, "onCancel: Authentication Cancel!");
+        failTrace("provider_login");
+        updateUI(null);
+    }
+
+    private void onLoginFailed(FacebookException error) {
+        Toast.makeText(getApplicationContext(), "Authentication ERROR!", Toast.LENGTH_LONG).show();
+        AuthLog.w(TAG, "onError: Authentication Error!", error);
+        failTrace("provider_login");
+        updateUI(null);
+    }
+
+    private void handleFacebookAccessToken(AccessToken accessToken) {
+        if (mTrace == null) {
+            mTrace = AuthTrace.start("facebook");
+        }
+        mResultDispatcher.dispatchCredential(mBackend, CREDENTIAL, accessToken.getToken(), null, mTrace);
+    }
+
+    private void failTrace(String stage) {
+        if (mTrace != null) {
+            mTrace.fail(stage);
+            mTrace = null;
+        }
+    }
+
+    private void updateUI(UserSnapshot user) {
+        if (user != null) {
+            // Signed in
+            mRenderer.render(AuthUiState.signedIn(
+                    getString(R.string.firebase_ui_status_form, user.getEmail()),
+                    getString(R.string.firebase_ui_detail_form, user.getUid())));
+        } else {
+            // Signed out
+            mRenderer.render(AuthUiState.signedOut(
+                    getString(R.string.sign_out_text), getString(R.string.detail_empty_text)));
+        }
+    }
+
+    private void signOut() {
+        mBackend.signOut();
+        LoginManager.getInstance().logOut();
+        updateUI(null);
+    }
+
+    @Override
+    public void onClick(View v) {
+        int i = v.getId();
+        if (i == R.id.sign_out_button) {
+            signOut();
+        }
+
+    }
+
+    // Registered in the CallbackManager, reaches the screen only while it is alive
+    private static final class LoginCallback implements FacebookCallback<LoginResult> {
+
+        private final LifecycleBridge<FacebookActivity> mBridge;
+
+        LoginCallback(LifecycleBridge<FacebookActivity> bridge) {
+            mBridge = bridge;
+        }
+
+        @Override
+        public void onSuccess(LoginResult loginResult) {
+            FacebookActivity activity = mBridge.get();
+            if (activity != null) {
+                activity.onLoginSucceeded(loginResult);
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            FacebookActivity activity = mBridge.get();
+            if (activity != null) {
+                activity.onLoginCancelled();
+            }
+        }
+
+        @Override
+        public void onError(FacebookException error) {
+            FacebookActivity activity = mBridge.get();
+            if (activity != null) {
+                activity.onLoginFailed(error);
+            }
+        }
+    }
+
+    // Views of R.layout.activity_facebook, looked up once when the content is set
+    static final class Views {
+        final TextView status;
+        final TextView detail;
+        final LoginButton signInButton;
+        final View signOutButton;
+
+        Views(View root) {
+            status = (TextView) root.findViewById(R.id.status);
+            detail = (TextView) root.findViewById(R.id.details);
+            signInButton = (LoginButton) root.findViewById(R.id.sign_in_facebook_button);
+            signOutButton = root.findViewById(R.id.sign_out_button);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+
+import com.facebook.FacebookSdk;
+
+/**
+ * Starts the Facebook SDK, called by {@link ProviderRegistry} once the module is installed.
+ */
+public final class FacebookInitializer implements ProviderRegistry.Initializer {
+
+    @Override
+    public void initialize(Context context) {
+        FacebookSdk.sdkInitialize(context);
+    }
+}
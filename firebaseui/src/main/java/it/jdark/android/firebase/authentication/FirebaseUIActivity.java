@@ -0,0 +1,153 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.firebase.ui.auth.AuthUI;
+import com.google.android.play.core.splitcompat.SplitCompat;
+
+import java.util.Arrays;
+
+import it.jdark.android.firebase.authentication.firebaseui.R;
+
+public class FirebaseUIActivity extends AppCompatActivity implements View.OnClickListener,
+        AuthSessionManager.Observer {
+
+    private static final int RC_SIGN_IN = 9001;
+
+    private Views mViews;
+    private AuthUiRenderer mRenderer;
+    private AuthTrace.Flow mTrace;
+
+    @Override
+    protected void attachBaseContext(Context newBase) {
+        super.attachBaseContext(newBase);
+        // Classes and resources of this module, when it was installed on demand
+        SplitCompat.installActivity(this);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_firebase_ui);
+        mViews = new Views(findViewById(android.R.id.content));
+        mRenderer = new AuthUiRenderer.Builder(mViews.status, mViews.detail)
+                .signedInViews(mViews.signOutButton)
+                .signedOutViews(mViews.signInButton)
+                .build();
+
+        mViews.signInButton.setOnClickListener(this);
+        mViews.signOutButton.setOnClickListener(this);
+
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        AuthSessionManager.getInstance(this).addObserver(this);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        AuthSessionManager.getInstance(this).removeObserver(this);
+    }
+
+    @Override
+    public void onSessionChanged(UserSnapshot user) {
+        updateUI(user);
+    }
+
+    @Override
+    public void onClick(View v) {
+        switch (v.getId()) {
+            case R.id.resend_code:
+                startSignIn();
+                break;
+            case R.id.sign_out_button:
+                signOut();
+                break;
+        }
+    }
+
+    private void startSignIn() {
+        mTrace = AuthTrace.start("firebase_ui");
+        mTrace.beginSection("intent_launch");
+        Intent intent = AuthUI.getInstance().createSignInIntentBuilder()
+                .setIsSmartLockEnabled(!BuildConfig.DEBUG)
+                .setProviders(Arrays.asList(new AuthUI.IdpConfig.Builder(AuthUI.EMAIL_PROVIDER).build()))
+                .build();
+
+        startActivityForResult(intent, RC_SIGN_IN);
+        mTrace.endSection();
+    }
+
+    private void signOut() {
+        AuthUI.getInstance().signOut(this);
+        updateUI(null);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (requestCode == RC_SIGN_IN) {
+            if (resultCode == RESULT_OK) {
+                // Sign in succeeded
+                if (mTrace != null) {
+                    mTrace.stage("activity_result");
+                }
+                updateUI(AuthSessionManager.getInstance(this).getUser());
+                if (mTrace != null) {
+                    mTrace.endOnNextFrame(mViews.status, "first_update_ui");
+                    mTrace = null;
+                }
+            } else {
+                // Sign in failed
+                Toast.makeText(this, "Sign In Failed", Toast.LENGTH_SHORT).show();
+                failTrace("activity_result");
+                updateUI(null);
+            }
+        }
+    }
+
+    private void failTrace(String stage) {
+        if (mTrace != null) {
+            mTrace.fail(stage);
+            mTrace = null;
+        }
+    }
+
+    private void updateUI(UserSnapshot user) {
+        if (user != null) {
+            // Signed in
+            mRenderer.render(AuthUiState.signedIn(
+                    getString(R.string.firebase_ui_status_form, user.getEmail()),
+                    getString(R.string.firebase_ui_detail_form, user.getUid())));
+        } else {
+            // Signed out
+            mRenderer.render(AuthUiState.signedOut(
+                    getString(R.string.sign_out_text), getString(R.string.detail_empty_text)));
+        }
+    }
+
+    // Views of R.layout.activity_firebase_ui, looked up once when the content is set
+    static final class Views {
+        final TextView status;
+        final TextView detail;
+        final View signInButton;
+        final View signOutButton;
+
+        Views(View root) {
+            status = (TextView) root.findViewById(R.id.status);
+            detail = (TextView) root.findViewById(R.id.details);
+            signInButton = root.findViewById(R.id.resend_code);
+            signOutButton = root.findViewById(R.id.sign_out_button);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.play.core.splitcompat.SplitCompat;
+import com.google.firebase.FirebaseException;
+import com.google.firebase.auth.AuthCredential;
+import com.google.firebase.auth.PhoneAuthCredential;
+import com.google.firebase.auth.PhoneAuthProvider;
+import com.hbb20.CountryCodePicker;
+
+import java.util.concurrent.TimeUnit;
+
+import it.jdark.android.firebase.authentication.phone.R;
+
+public class PhoneActivity extends AppCompatActivity implements View.OnClickListener,
+        AuthSessionManager.Observer, AuthResultDispatcher.Callback {
+
+    private final String TAG = getClass().getSimpleName();
+
+    private static final AuthResultDispatcher.CredentialFactory CREDENTIAL =
+            new AuthResultDispatcher.CredentialFactory() {
+                @Override
+                public AuthCredential create(String verificationId, String code) {
+                    return PhoneAuthProvider.getCredential(verificationId, code);
+                }
+            };
+
+    AuthBackend mBackend;
+    Views mViews;
+    AuthUiRenderer mRenderer;
+    // Sending the code, then signing in with it
+    AuthTrace.Flow mCodeTrace;
+    AuthTrace.Flow mTrace;
+
+    AuthResultDispatcher mResultDispatcher;
+
+    PhoneAuthProvider.OnVerificationStateChangedCallbacks mCallbacks;
+
+    String verificationCode;
+    PhoneAuthProvider.ForceResendingToken token;
+
+    VerificationRateLimiter mRateLimiter;
+    // Number of the last verification sent, and end of the cooldown shown to the user
+    String mVerifyingNumber;
+    long mCooldownEnd;
+
+    // Wall clock time the verification in progress was requested, 0 when there is none
+    long mVerificationStartedAt;
+    PhoneVerificationStore mSessionStore;
+
+    // Ticks the visible cooldown once per second until it ends
+    private final Runnable mCooldownTick = new Runnable() {
+        @Override
+        public void run() {
+            updateCooldown();
+        }
+    };
+
+    @Override
+    protected void attachBaseContext(Context newBase) {
+        super.attachBaseContext(newBase);
+        // Classes and resources of this module, when it was installed on demand
+        SplitCompat.installActivity(this);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_phone);
+        mViews = new Views(findViewById(android.R.id.content));
+        mRenderer = new AuthUiRenderer.Builder(mViews.status, mViews.detail)
+                .signedInViews(mViews.signoutLayout)
+                .signedOutViews(mViews.inputLayout, mViews.signinLayout)
+                .goneWhenSignedIn(mViews.validateLayout)
+                .build();
+
+        mViews.resendButton.setOnClickListener(this);
+        mViews.signOutButton.setOnClickListener(this);
+        mViews.signInButton.setOnClickListener(this);
+        mViews.sendVerifyCodeButton.setOnClickListener(this);
+
+        // Callbacks from Firebase phone number registration process, they can outlive the
+        // screen while a verification is pending
+        mCallbacks = new VerificationCallbacks(new LifecycleBridge<>(this));
+
+        mBackend = AuthBackends.get();
+        mRateLimiter = VerificationRateLimiter.getInstance(this);
+        mSessionStore = PhoneVerificationStore.getInstance(this);
+
+        // Receives the result of the sign in process (signInWithCredential)
+        // Allow to perform some action once the login process is completed
+        // (tipically update UI <- which is handle in that example by the AuthSessionManager)
+        mResultDispatcher = new AuthResultDispatcher(this, this);
+
+        resumeVerification(savedInstanceState);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (mVerificationStartedAt != 0 && mVerifyingNumber != null) {
+            PhoneVerificationStore.save(outState, currentSession());
+        }
+    }
+
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        AuthSessionManager.getInstance(this).addObserver(this);
+        if (mCooldownEnd != 0) {
+            updateCooldown();
+        }
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        AuthSessionManager.getInstance(this).removeObserver(this);
+        mViews.phoneNumber.removeCallbacks(mCooldownTick);
+    }
+
+    // Update the UI according the current log in user
+    @Override
+    public void onSessionChanged(UserSnapshot user) {
+        if (user != null) {
+            AuthLog.d(TAG, "onSessionChanged: Signed in -> " + user.getUid());
+        } else {
+            AuthLog.d(TAG, "onSessionChanged: Signed out");
+        }
+        updateUI(user);
+    }
+
+
+    @Override
+    public void onAuthSucceeded(UserSnapshot user) {
+        mViews.sendVerifyCodeButton.setEnabled(true);
+        endVerification();
+        if (mTrace != null) {
+            mTrace.stage("sign_in_with_credential");
+        }
+        updateUI(user);
+        if (mTrace != null) {
+            mTrace.endOnNextFrame(mViews.status, "first_update_ui");
+            mTrace = null;
+        }
+    }
+
+    // Show back few information about the reason of fail
+    @Override
+    public void onAuthFailed(AuthError error) {
+        mViews.sendVerifyCodeButton.setEnabled(true);
+        failTrace("sign_in_with_credential");
+        if (error == AuthError.INVALID_VERIFICATION_CODE) {
+            mViews.verifyCode.setError(getString(error.getMessage()));
+        }
+    }
+
+    private void onVerificationCompleted(PhoneAuthCredential phoneAuthCredential) {
+        AuthLog.i(TAG, "onVerificationCompleted: Completed!");
+        endVerification();
+        if (mCodeTrace != null) {
+            mCodeTrace.end("auto_retrieval");
+            mCodeTrace = null;
+        }
+        if (mResultDispatcher.isPending()) {
+            // The code typed by the user is already being checked
+            return;
+        }
+        mViews.sendVerifyCodeButton.setEnabled(false);
+        if (mTrace == null) {
+            mTrace = AuthTrace.start("phone");
+        }
+        Toast.makeText(getApplicationContext(), "logging...", Toast.LENGTH_SHORT).show();
+        mResultDispatcher.dispatch(mBackend.signInWithCredential(phoneAuthCredential,
+                mResultDispatcher.getCancellationToken()));
+    }
+
+    private void onVerificationFailed(FirebaseException e) {
+        AuthLog.w(TAG, "onVerificationFailed ", e);
+        endVerification();
+        if (mCodeTrace != null) {
+            mCodeTrace.fail("code_sent");
+            mCodeTrace = null;
+        }
+        AuthError error = AuthErrorClassifier.classify(e);
+        if (error == AuthError.INVALID_PHONE_NUMBER || error == AuthError.INVALID_CREDENTIAL) {
+            mViews.phoneNumber.setError(getString(AuthError.INVALID_PHONE_NUMBER.getMessage()));
+        } else if ((error == AuthError.TOO_MANY_REQUESTS || error == AuthError.NETWORK)
+                && mVerifyingNumber != null) {
+            Toast.makeText(getApplicationContext(), error.getMessage(), Toast.LENGTH_LONG).show();
+            startCooldown(mRateLimiter.onFailure(mVerifyingNumber));
+        } else {
+            Toast.makeText(getApplicationContext(), error.getMessage(), Toast.LENGTH_LONG).show();
+        }
+        // Hide verification layout if any error has came
+        mViews.validateLayout.setVisibility(View.GONE);
+        mViews.resendButton.setEnabled(false);
+    }
+
+    private void onCodeSent(String verificationID, PhoneAuthProvider.ForceResendingToken forceResendingToken) {
+        AuthLog.i(TAG, "onCodeSent");
+        if (mCodeTrace != null) {
+            mCodeTrace.end("code_sent");
+            mCodeTrace = null;
+        }
+        if (mVerifyingNumber != null) {
+            mRateLimiter.onSuccess(mVerifyingNumber);
+        }
+        mViews.validateLayout.setVisibility(View.VISIBLE);
+        mViews.resendButton.setEnabled(true);
+        verificationCode = verificationID;
+        token = forceResendingToken;
+        mSessionStore.persist(currentSession());
+    }
+
+    // Picks up the verification of a previous instance or process, without sending another SMS
+    private void resumeVerification(Bundle savedInstanceState) {
+        PhoneVerificationStore.Session session = mSessionStore.restore(savedInstanceState);
+        if (session != null) {
+            resumeVerification(session);
+            return;
+        }
+        // Read off the main thread, the keystore can take a while
+        mSessionStore.load().addOnSuccessListener(this, new OnSuccessListener<PhoneVerificationStore.Session>() {
+            @Override
+            public void onSuccess(PhoneVerificationStore.Session session) {
+                // A verification requested in the meantime wins over the stored one
+                if (session != null && mVerificationStartedAt == 0) {
+                    resumeVerification(session);
+                }
+            }
+        });
+    }
+
+    private void resumeVerification(PhoneVerificationStore.Session session) {
+        AuthLog.d(TAG, "resumeVerification: code sent -> " + (session.mVerificationId != null));
+        mVerifyingNumber = session.mNumber;
+        if (session.mVerificationId == null) {
+            // The code was requested but not sent: the callbacks of that request are gone
+            // with the previous instance, a new one goes through the rate limiter when the
+            // user asks for it
+            AuthTrace.count("phone.session_interrupted");
+            mViews.phoneNumber.setError(getString(R.string.phone_verification_interrupted));
+            return;
+        }
+        AuthTrace.count("phone.session_resumed");
+        verificationCode = session.mVerificationId;
+        token = session.mToken;
+        mVerificationStartedAt = session.mStartedAt;
+        mViews.validateLayout.setVisibility(View.VISIBLE);
+        mViews.resendButton.setEnabled(token != null);
+    }
+
+    private PhoneVerificationStore.Session currentSession() {
+        return new PhoneVerificationStore.Session(mVerifyingNumber, verificationCode, token,
+                mVerificationStartedAt);
+    }
+
+    private void endVerification() {
+        mVerificationStartedAt = 0;
+        mSessionStore.clear();
+    }
+
+    private void failTrace(String stage) {
+        if (mTrace != null) {
+            mTrace.fail(stage);
+            mTrace = null;
+        }
+    }
+
+    private void updateUI(UserSnapshot user) {
+        if (user != null) {
+            mRenderer.render(AuthUiState.signedIn(
+                    getString(R.string.phone_number_status_form, user.getPhoneNumber()),
+                    getString(R.string.phone_number_detail_form, user.getUid())));
+        } else {
+            mRenderer.render(AuthUiState.signedOut(getString(R.string.sign_out_text), null));
+        }
+    }
+
+    @Override
+    public void onClick(View view) {
+        int i = view.getId();
+        if (i == R.id.register_signin_button) {
+            createAccount(mViews.ccp.getSelectedCountryCodeWithPlus(), mViews.phoneNumber.getText().toString());
+        } else if (i == R.id.resend_code) {
+            ResendCode(mViews.ccp.getSelectedCountryCodeWithPlus(), mViews.phoneNumber.getText().toString());
+        } else if (i == R.id.sign_out_button) {
+            signOut();
+        } else if (i == R.id.send_verify_code) {
+            sendValidationCode();
+        }
+
+    }
+
+    private void createAccount(String prefix, String phoneNumber) {
+        // Neither the number nor the resending token reach the log
+        AuthLog.d(TAG, "createAccount");
+        String number = normalizeNumber(prefix, phoneNumber);
+        if (number == null || !acquireVerification(number)) {
+            return;
+        }
+        mBackend.verifyPhoneNumber(number, PhoneVerificationStore.TIMEOUT_SECONDS, TimeUnit.SECONDS, this, mCallbacks, null);
+    }
+
+    private void signOut() {
+        endVerification();
+        mBackend.signOut();
+    }
+
+    private void ResendCode(String prefix, String phoneNumber) {
+        String number = normalizeNumber(prefix, phoneNumber);
+        if (number == null || !acquireVerification(number)) {
+            return;
+        }
+        mBackend.verifyPhoneNumber(number, PhoneVerificationStore.TIMEOUT_SECONDS, TimeUnit.SECONDS, this, mCallbacks, token);
+    }
+
+    // E.164 form of the number, null (and the error shown) when no SMS could reach it
+    private String normalizeNumber(String prefix, String phoneNumber) {
+        String number = PhoneNumberNormalizer.normalize(prefix, phoneNumber);
+        if (number == null) {
+            AuthTrace.count("phone.invalid_number");
+            mViews.phoneNumber.setError(getString(AuthError.INVALID_PHONE_NUMBER.getMessage()));
+        }
+        return number;
+    }
+
+    // Asks the rate limiter for a verification of the number, showing the cooldown if refused
+    private boolean acquireVerification(String number) {
+        long wait = mRateLimiter.tryAcquire(number);
+        if (wait > 0) {
+            AuthLog.i(TAG, "acquireVerification: refused for " + wait + " ms");
+            startCooldown(wait);
+            return false;
+        }
+        if (!number.equals(mVerifyingNumber)) {
+            // The code and the token of another number are of no use
+            verificationCode = null;
+            token = null;
+        }
+        mVerifyingNumber = number;
+        mVerificationStartedAt = mSessionStore.now();
+        mCodeTrace = AuthTrace.start("phone_code");
+        return true;
+    }
+
+    private void startCooldown(long durationMs) {
+        mCooldownEnd = SystemClock.elapsedRealtime() + durationMs;
+        mViews.signInButton.setEnabled(false);
+        mViews.resendButton.setEnabled(false);
+        updateCooldown();
+    }
+
+    private void updateCooldown() {
+        mViews.phoneNumber.removeCallbacks(mCooldownTick);
+        long remaining = mCooldownEnd - SystemClock.elapsedRealtime();
+        if (remaining > 0) {
+            long seconds = (remaining + 999) / 1000;
+            mViews.phoneNumber.setError(getString(R.string.phone_verification_cooldown_form, seconds));
+            mViews.phoneNumber.postDelayed(mCooldownTick, Math.min(remaining, 1000));
+        } else {
+            mCooldownEnd = 0;
+            mViews.phoneNumber.setError(null);
+            mViews.signInButton.setEnabled(true);
+            mViews.resendButton.setEnabled(token != null);
+        }
+    }
+
+    private void sendValidationCode() {
+        String code = mViews.verifyCode.getText().toString();
+        if (mResultDispatcher.isPending()) {
+            // One sign-in at a time, a double tap would send the same code twice
+            return;
+        }
+        if (!code.isEmpty() && verificationCode!= null) {
+            mViews.sendVerifyCodeButton.setEnabled(false);
+            if (mTrace == null) {
+                mTrace = AuthTrace.start("phone");
+            }
+            mResultDispatcher.dispatchCredential(mBackend, CREDENTIAL, verificationCode, code, null);
+        } else
+            mViews.verifyCode.setError("Required!");
+    }
+
+    // Handed to the backend with every verification, reaches the screen only while it is alive
+    private static final class VerificationCallbacks extends PhoneAuthProvider.OnVerificationStateChangedCallbacks {
+
+        private final LifecycleBridge<PhoneActivity> mBridge;
+
+        VerificationCallbacks(LifecycleBridge<PhoneActivity> bridge) {
+            mBridge = bridge;
+        }
+
+        @Override
+        public void onVerificationCompleted(PhoneAuthCredential phoneAuthCredential) {
+            PhoneActivity activity = mBridge.get();
+            if (activity != null) {
+                activity.onVerificationCompleted(phoneAuthCredential);
+            }
+        }
+
+        @Override
+        public void onVerificationFailed(FirebaseException e) {
+            PhoneActivity activity = mBridge.get();
+            if (activity != null) {
+                activity.onVerificationFailed(e);
+            }
+        }
+
+        @Override
+        public void onCodeSent(String verificationID, PhoneAuthProvider.ForceResendingToken forceResendingToken) {
+            PhoneActivity activity = mBridge.get();
+            if (activity != null) {
+                activity.onCodeSent(verificationID, forceResendingToken);
+            }
+        }
+    }
+
+    // Views of R.layout.activity_phone, looked up once when the content is set
+    static final class Views {
+        final TextView status;
+        final TextView detail;
+        final CountryCodePicker ccp;
+        final EditText phoneNumber;
+        final View inputLayout;
+        final View signinLayout;
+        final View signoutLayout;
+        final View validateLayout;
+        final EditText verifyCode;
+        final View signInButton;
+        final View resendButton;
+        final View signOutButton;
+        final View sendVerifyCodeButton;
+
+        Views(View root) {
+            status = (TextView) root.findViewById(R.id.status);
+            detail = (TextView) root.findViewById(R.id.details);
+            ccp = (CountryCodePicker) root.findViewById(R.id.ccp);
+            phoneNumber = (EditText) root.findViewById(R.id.phone_number);
+            inputLayout = root.findViewById(R.id.inputLayout);
+            signinLayout = root.findViewById(R.id.signinLayout);
+            signoutLayout = root.findViewById(R.id.signoutLayout);
+            validateLayout = root.findViewById(R.id.validateLayout);
+            verifyCode = (EditText) root.findViewById(R.id.verify_code);
+            signInButton = root.findViewById(R.id.register_signin_button);
+            resendButton = root.findViewById(R.id.resend_code);
+            signOutButton = root.findViewById(R.id.sign_out_button);
+            sendVerifyCodeButton = root.findViewById(R.id.send_verify_code);
+        }
+    }
+}
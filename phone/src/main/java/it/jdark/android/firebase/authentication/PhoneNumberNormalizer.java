@@ -0,0 +1,226 @@
+package it.jdark.android.firebase.authentication;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Turns the number typed in PhoneActivity into its E.164 form ({@code +<country code><national
+ * number>}), or refuses it, before a verification is requested.
+ * <p>
+ * The input can be national (completed with the code selected in the picker) or international,
+ * starting with {@code +} or {@code 00}. Spaces, dashes, dots, slashes and parentheses are
+ * ignored, a national trunk prefix ({@code 0} in most countries, {@code 1} in North America,
+ * {@code 8} in Russia) is dropped when the number is too long with it.
+ * <p>
+ * The numbers of the countries in {@link #TABLE} must have one of the national lengths and
+ * start with one of the leading digits of their country, the others only the E.164 length.
+ * The table is compiled once in {@link #RULES}, one int per country code, so a check is a
+ * single pass over the input and an array lookup. The rules are deliberately loose, they
+ * only catch numbers no SMS could ever reach; the backend stays the final judge.
+ * <p>
+ * The result is the canonical key of the number: the same number typed in any format gives
+ * the same string, used for the verification and by the {@link VerificationRateLimiter}.
+ */
+final class PhoneNumberNormalizer {
+
+    // E.164: at most 15 digits, country code included
+    private static final int MAX_DIGITS = 15;
+    // Numbers of the countries not in the table
+    private static final int MIN_NATIONAL_LENGTH = 4;
+
+    private static final int LENGTHS_SHIFT = 10;
+    private static final int TRUNK_SHIFT = 26;
+
+    // Country code, national number lengths, leading digits of the national number, trunk prefix
+    private static final String[] TABLE = {
+            "1 10 23456789 1",
+            "7 10 3456789 8",
+            "20 8-10 123456789 0",
+            "27 9 123456789 0",
+            "30 10 268 -",
+            "31 9 123456789 0",
+            "32 8-9 123456789 0",
+            "33 9 123456789 0",
+            "34 9 6789 -",
+            "39 6-11 03 -",
+            "40 9 237 0",
+            "41 9 123456789 0",
+            "43 4-13 123456789 0",
+            "44 9-10 123456789 0",
+            "45 8 23456789 -",
+            "46 7-13 123456789 0",
+            "47 8 23456789 -",
+            "48 9 123456789 -",
+            "49 5-13 123456789 0",
+            "51 8-9 123456789 0",
+            "52 10 123456789 -",
+            "54 10-11 123456789 0",
+            "55 10-11 123456789 0",
+            "56 9 23456789 -",
+            "57 8-10 123456789 -",
+            "60 8-10 123456789 0",
+            "61 9 23478 0",
+            "62 8-12 123456789 0",
+            "63 8-10 23456789 0",
+            "64 8-10 23456789 0",
+            "65 8 3689 -",
+            "66 8-9 23456789 0",
+            "81 9-10 123456789 0",
+            "82 8-10 123456789 0",
+            "84 9-10 123456789 0",
+            "86 9-11 123456789 0",
+            "90 10 234589 0",
+            "91 10 123456789 0",
+            "234 8-10 123456789 0",
+            "351 9 236789 -",
+            "353 7-9 123456789 0",
+            "358 5-12 123456789 0",
+            "380 9 3456789 0",
+            "966 9 123456789 0",
+            "971 8-9 23456789 0",
+            "972 8-9 23456789 0"
+    };
+
+    // Indexed by country code: leading digits mask, national lengths mask, trunk digit + 1
+    private static final int[] RULES = compile(TABLE);
+
+    private PhoneNumberNormalizer() {
+    }
+
+    /**
+     * Returns the E.164 form of the number, or null when it can't be a valid number.
+     *
+     * @param countryCode the code used for a national number, with or without the leading '+'
+     * @param input       the number as typed
+     */
+    @Nullable
+    static String normalize(String countryCode, CharSequence input) {
+        // Digits of the input, with room to spare for a trunk or international prefix
+        char[] digits = new char[MAX_DIGITS + 3];
+        int count = 0;
+        boolean international = false;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (count == digits.length) {
+                    return null;
+                }
+                digits[count++] = c;
+            } else if (c == '+' && count == 0 && !international) {
+                international = true;
+            } else if (c != ' ' && c != '-' && c != '.' && c != '/' && c != '(' && c != ')') {
+                return null;
+            }
+        }
+
+        int start = 0;
+        if (!international && count > 2 && digits[0] == '0' && digits[1] == '0') {
+            international = true;
+            start = 2;
+        }
+        if (international) {
+            return normalizeInternational(digits, start, count);
+        }
+
+        int code = parseCountryCode(countryCode);
+        if (code <= 0) {
+            return null;
+        }
+        int rule = RULES[code];
+        if (!isNational(rule, code, digits, start, count)) {
+            // Typed with the trunk prefix
+            int trunk = (rule >>> TRUNK_SHIFT) - 1;
+            if (trunk < 0 || count == start || digits[start] != '0' + trunk
+                    || !isNational(rule, code, digits, start + 1, count)) {
+                return null;
+            }
+            start++;
+        }
+        return format(code, digits, start, count);
+    }
+
+    @Nullable
+    private static String normalizeInternational(char[] digits, int start, int end) {
+        if (end - start > MAX_DIGITS || end == start || digits[start] == '0') {
+            return null;
+        }
+        // Country codes are prefix free, at most one of the 1 to 3 digit prefixes is one
+        int code = 0;
+        for (int length = 1; length <= 3 && start + length < end; length++) {
+            code = code * 10 + (digits[start + length - 1] - '0');
+            if (RULES[code] != 0) {
+                return isNational(RULES[code], code, digits, start + length, end)
+                        ? format(code, digits, start + length, end)
+                        : null;
+            }
+        }
+        // Country not in the table, only the E.164 length is checked
+        return end - start >= MIN_NATIONAL_LENGTH + 1 ? format(0, digits, start, end) : null;
+    }
+
+    private static boolean isNational(int rule, int code, char[] digits, int start, int end) {
+        int length = end - start;
+        if (length <= 0 || length + codeLength(code) > MAX_DIGITS) {
+            return false;
+        }
+        if (rule == 0) {
+            return length >= MIN_NATIONAL_LENGTH;
+        }
+        return (rule & (1 << (LENGTHS_SHIFT + length))) != 0
+                && (rule & (1 << (digits[start] - '0'))) != 0;
+    }
+
+    // Country code 0 when it is already part of the digits
+    private static String format(int code, char[] digits, int start, int end) {
+        StringBuilder number = new StringBuilder(MAX_DIGITS + 1).append('+');
+        if (code != 0) {
+            number.append(code);
+        }
+        return number.append(digits, start, end - start).toString();
+    }
+
+    private static int parseCountryCode(String countryCode) {
+        int code = 0;
+        int start = countryCode.startsWith("+") ? 1 : 0;
+        if (countryCode.length() == start || countryCode.length() - start > 3) {
+            return -1;
+        }
+        for (int i = start; i < countryCode.length(); i++) {
+            char c = countryCode.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            code = code * 10 + (c - '0');
+        }
+        return code;
+    }
+
+    private static int codeLength(int code) {
+        return code >= 100 ? 3 : code >= 10 ? 2 : 1;
+    }
+
+    private static int[] compile(String[] table) {
+        int[] rules = new int[1000];
+        for (String row : table) {
+            String[] fields = row.split(" ");
+            int code = Integer.parseInt(fields[0]);
+
+            String lengths = fields[1];
+            int dash = lengths.indexOf('-');
+            int min = Integer.parseInt(dash < 0 ? lengths : lengths.substring(0, dash));
+            int max = dash < 0 ? min : Integer.parseInt(lengths.substring(dash + 1));
+
+            int rule = 0;
+            for (int length = min; length <= max; length++) {
+                rule |= 1 << (LENGTHS_SHIFT + length);
+            }
+            for (int i = 0; i < fields[2].length(); i++) {
+                rule |= 1 << (fields[2].charAt(i) - '0');
+            }
+            if (!"-".equals(fields[3])) {
+                rule |= (fields[3].charAt(0) - '0' + 1) << TRUNK_SHIFT;
+            }
+            rules[code] = rule;
+        }
+        return rules;
+    }
+}
@@ -0,0 +1,341 @@
+package it.jdark.android.firebase.authentication;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Bundle;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.PhoneAuthProvider;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Keeps the phone verification in progress, so that PhoneActivity resumes it after a rotation
+ * or a process death instead of sending another SMS.
+ * <p>
+ * A {@link Session} lives in the saved instance state, resending token included, and once the
+ * code is sent also on disk, encrypted with AES/GCM under a key of the Android keystore (API 23
+ * and later, older devices only keep the instance state). The resending token is a binder
+ * object of Play Services and is not persisted. Both copies expire {@link #TIMEOUT_SECONDS}
+ * after the verification was requested, the timeout given to verifyPhoneNumber.
+ * <p>
+ * The disk copy is written, read and cleared in order on {@link AuthExecutors#background()},
+ * the keystore and the cipher never run on the main thread.
+ */
+final class PhoneVerificationStore {
+
+    static final long TIMEOUT_SECONDS = 60;
+    private static final long TTL_MS = TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+
+    private static final String TAG = "PhoneVerificationStore";
+
+    private static final String PREFS_NAME = "phone_verification_session";
+    private static final String KEY_DATA = "data";
+    private static final String KEY_IV = "iv";
+    private static final String KEY_EXPIRES = "expires";
+
+    private static final String STATE_NUMBER = "phone_verification.number";
+    private static final String STATE_VERIFICATION_ID = "phone_verification.verification_id";
+    private static final String STATE_TOKEN = "phone_verification.token";
+    private static final String STATE_STARTED = "phone_verification.started";
+
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "phone_verification_session";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * A verification requested for a number at a wall clock time, with the id and the
+     * resending token once the code is sent.
+     */
+    static final class Session {
+        final String mNumber;
+        final String mVerificationId;
+        final PhoneAuthProvider.ForceResendingToken mToken;
+        final long mStartedAt;
+
+        Session(String number, @Nullable String verificationId,
+                @Nullable PhoneAuthProvider.ForceResendingToken token, long startedAt) {
+            mNumber = number;
+            mVerificationId = verificationId;
+            mToken = token;
+            mStartedAt = startedAt;
+        }
+
+        boolean isExpired(long now) {
+            // A clock moved backwards doesn't extend the session
+            return now < mStartedAt || now >= mStartedAt + TTL_MS;
+        }
+
+        long getRemainingMs(long now) {
+            return Math.max(0, mStartedAt + TTL_MS - now);
+        }
+    }
+
+    /**
+     * The key sealing the disk copy, null when the device has no keystore to keep it.
+     */
+    interface KeySource {
+        @Nullable
+        SecretKey getKey() throws GeneralSecurityException, IOException;
+    }
+
+    private static PhoneVerificationStore sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final KeySource mKeys;
+    private final Executor mExecutor;
+    private final Clock mClock;
+
+    static synchronized PhoneVerificationStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PhoneVerificationStore(
+                    context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+                    Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? new KeystoreKeySource() : NO_KEY,
+                    new SerialExecutor(AuthExecutors.background()), Clock.SYSTEM);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    PhoneVerificationStore(SharedPreferences prefs, KeySource keys, Executor executor, Clock clock) {
+        mPrefs = prefs;
+        mKeys = keys;
+        mExecutor = executor;
+        mClock = clock;
+    }
+
+    /**
+     * The wall clock time a verification requested now starts at, on the clock of the store.
+     */
+    long now() {
+        return mClock.currentTimeMillis();
+    }
+
+    static void save(Bundle outState, Session session) {
+        outState.putString(STATE_NUMBER, session.mNumber);
+        outState.putString(STATE_VERIFICATION_ID, session.mVerificationId);
+        outState.putParcelable(STATE_TOKEN, session.mToken);
+        outState.putLong(STATE_STARTED, session.mStartedAt);
+    }
+
+    /**
+     * The session saved in the instance state, null if there is none or it expired.
+     */
+    @Nullable
+    Session restore(@Nullable Bundle savedInstanceState) {
+        if (savedInstanceState == null || savedInstanceState.getString(STATE_NUMBER) == null) {
+            return null;
+        }
+        Session session = new Session(savedInstanceState.getString(STATE_NUMBER),
+                savedInstanceState.getString(STATE_VERIFICATION_ID),
+                (PhoneAuthProvider.ForceResendingToken) savedInstanceState.getParcelable(STATE_TOKEN),
+                savedInstanceState.getLong(STATE_STARTED));
+        return session.isExpired(mClock.currentTimeMillis()) ? null : session;
+    }
+
+    /**
+     * Writes the session to disk, once its code is sent.
+     */
+    void persist(final Session session) {
+        if (session.mVerificationId == null) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(session);
+            }
+        });
+    }
+
+    /**
+     * The session written to disk, null if there is none, it expired or can't be read.
+     */
+    Task<Session> load() {
+        return Tasks.call(mExecutor, new Callable<Session>() {
+            @Override
+            public Session call() {
+                return read();
+            }
+        });
+    }
+
+    /**
+     * Forgets the session on disk, the verification ended.
+     */
+    void clear() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                erase();
+            }
+        });
+    }
+
+    private void write(Session session) {
+        String plain = session.mNumber + '\n' + session.mVerificationId + '\n' + session.mStartedAt;
+        try {
+            SecretKey key = mKeys.getKey();
+            if (key == null) {
+                return;
+            }
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key);
+            byte[] data = cipher.doFinal(plain.getBytes(UTF_8));
+            mPrefs.edit()
+                    .putString(KEY_DATA, toHex(data))
+                    .putString(KEY_IV, toHex(cipher.getIV()))
+                    .putLong(KEY_EXPIRES, session.mStartedAt + TTL_MS)
+                    .apply();
+        } catch (GeneralSecurityException | IOException e) {
+            AuthLog.w(TAG, "persist: failed", e);
+            erase();
+        }
+    }
+
+    @Nullable
+    private Session read() {
+        long expires = mPrefs.getLong(KEY_EXPIRES, 0);
+        if (expires == 0) {
+            return null;
+        }
+        String data = mPrefs.getString(KEY_DATA, null);
+        String iv = mPrefs.getString(KEY_IV, null);
+        long now = mClock.currentTimeMillis();
+        if (expires <= now || data == null || iv == null) {
+            erase();
+            return null;
+        }
+        try {
+            SecretKey key = mKeys.getKey();
+            if (key != null) {
+                Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, fromHex(iv)));
+                String[] fields = new String(cipher.doFinal(fromHex(data)), UTF_8).split("\n");
+                Session session = new Session(fields[0], fields[1], null, Long.parseLong(fields[2]));
+                if (!session.isExpired(now)) {
+                    return session;
+                }
+            }
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            // Key removed with the lock screen, or a record of another version
+            AuthLog.w(TAG, "load: failed", e);
+        }
+        erase();
+        return null;
+    }
+
+    private void erase() {
+        if (mPrefs.contains(KEY_EXPIRES)) {
+            mPrefs.edit().clear().apply();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd length");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Not hex");
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    private static final KeySource NO_KEY = new KeySource() {
+        @Override
+        public SecretKey getKey() {
+            return null;
+        }
+    };
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static final class KeystoreKeySource implements KeySource {
+
+        @Override
+        public SecretKey getKey() throws GeneralSecurityException, IOException {
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+            keyStore.load(null);
+            if (keyStore.containsAlias(KEY_ALIAS)) {
+                return ((KeyStore.SecretKeyEntry) keyStore.getEntry(KEY_ALIAS, null)).getSecretKey();
+            }
+            KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+            generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                    KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                    .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                    .build());
+            return generator.generateKey();
+        }
+    }
+
+    // Runs the tasks one after the other on the delegate, in the order they were submitted
+    private static final class SerialExecutor implements Executor {
+
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private final Executor mDelegate;
+        private Runnable mActive;
+
+        SerialExecutor(Executor delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public synchronized void execute(final Runnable task) {
+            mTasks.offer(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (mActive == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            mActive = mTasks.poll();
+            if (mActive != null) {
+                mDelegate.execute(mActive);
+            }
+        }
+    }
+}
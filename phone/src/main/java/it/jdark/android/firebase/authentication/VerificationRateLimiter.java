@@ -0,0 +1,198 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.MainThread;
+import android.support.annotation.VisibleForTesting;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+/**
+ * Client side limit on the SMS verifications sent by the device.
+ * <p>
+ * Every request takes a token from two buckets, one for the whole device and one for the
+ * phone number: when either is empty the request is refused and the caller is told how long
+ * to wait. On top of that, every failure reported by {@link #onFailure(String)} (quota,
+ * network) doubles a cooldown for the number, with jitter, until a code is sent again or
+ * the failures are forgotten, one for every {@link #FAILURE_DECAY_MS} without failures after
+ * the cooldown ended.
+ * <p>
+ * The numbers are expected in the E.164 form given by {@link PhoneNumberNormalizer}, so
+ * the same number typed in different formats shares its bucket. They are stored as their
+ * SHA-256, every number has its own bucket and none is written in clear.
+ * <p>
+ * The state is kept in shared preferences and uses the wall clock, so killing the process
+ * doesn't reset it. The buckets of the numbers are removed once they are full again.
+ */
+final class VerificationRateLimiter {
+
+    private static final String PREFS_NAME = "phone_verification_limits";
+
+    private static final String DEVICE_KEY = "device";
+    private static final String NUMBER_KEY_PREFIX = "number.";
+
+    private static final String TOKENS_SUFFIX = ".tokens";
+    private static final String UPDATED_SUFFIX = ".updated";
+    private static final String FAILURES_SUFFIX = ".failures";
+    private static final String COOLDOWN_SUFFIX = ".cooldown";
+
+    // At most 5 codes in a row from the device, then one every 10 minutes
+    private static final int DEVICE_CAPACITY = 5;
+    private static final long DEVICE_REFILL_MS = 10 * 60 * 1000;
+
+    // At most 3 codes in a row to the same number, then one every 5 minutes
+    private static final int NUMBER_CAPACITY = 3;
+    private static final long NUMBER_REFILL_MS = 5 * 60 * 1000;
+
+    private static final long BACKOFF_BASE_MS = 30 * 1000;
+    private static final long BACKOFF_MAX_MS = 60 * 60 * 1000;
+    static final long FAILURE_DECAY_MS = 60 * 60 * 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static VerificationRateLimiter sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final Clock mClock;
+    private final Random mRandom;
+
+    static synchronized VerificationRateLimiter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new VerificationRateLimiter(
+                    context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+                    Clock.SYSTEM, new Random());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    VerificationRateLimiter(SharedPreferences prefs, Clock clock, Random random) {
+        mPrefs = prefs;
+        mClock = clock;
+        mRandom = random;
+    }
+
+    /**
+     * Takes a token for a verification of the number.
+     *
+     * @return 0 when the verification can be sent, otherwise the milliseconds to wait
+     */
+    @MainThread
+    long tryAcquire(String phoneNumber) {
+        long now = mClock.currentTimeMillis();
+        String numberKey = numberKey(phoneNumber);
+
+        long cooldownEnd = mPrefs.getLong(numberKey + COOLDOWN_SUFFIX, 0);
+        if (cooldownEnd > now) {
+            return cooldownEnd - now;
+        }
+        if (cooldownEnd != 0 && failures(numberKey, now) == 0) {
+            forgetFailures(numberKey);
+        }
+
+        double deviceTokens = refill(DEVICE_KEY, DEVICE_CAPACITY, DEVICE_REFILL_MS, now);
+        double numberTokens = refill(numberKey, NUMBER_CAPACITY, NUMBER_REFILL_MS, now);
+        if (deviceTokens < 1 || numberTokens < 1) {
+            long deviceWait = deviceTokens < 1 ? (long) ((1 - deviceTokens) * DEVICE_REFILL_MS) : 0;
+            long numberWait = numberTokens < 1 ? (long) ((1 - numberTokens) * NUMBER_REFILL_MS) : 0;
+            return Math.max(1, Math.max(deviceWait, numberWait));
+        }
+
+        mPrefs.edit()
+                .putFloat(DEVICE_KEY + TOKENS_SUFFIX, (float) (deviceTokens - 1))
+                .putLong(DEVICE_KEY + UPDATED_SUFFIX, now)
+                .putFloat(numberKey + TOKENS_SUFFIX, (float) (numberTokens - 1))
+                .putLong(numberKey + UPDATED_SUFFIX, now)
+                .apply();
+        return 0;
+    }
+
+    /**
+     * A code was sent to the number, its backoff starts over.
+     */
+    @MainThread
+    void onSuccess(String phoneNumber) {
+        forgetFailures(numberKey(phoneNumber));
+    }
+
+    /**
+     * The verification of the number failed for a reason worth backing off from.
+     *
+     * @return the cooldown before the next attempt, in milliseconds
+     */
+    @MainThread
+    long onFailure(String phoneNumber) {
+        long now = mClock.currentTimeMillis();
+        String numberKey = numberKey(phoneNumber);
+        int failures = failures(numberKey, now);
+
+        // Exponential window (base * 2^failures, capped), half of it jittered
+        long window = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(failures, 16));
+        long cooldown = window / 2 + (long) (mRandom.nextDouble() * (window / 2));
+
+        mPrefs.edit()
+                .putInt(numberKey + FAILURES_SUFFIX, failures + 1)
+                .putLong(numberKey + COOLDOWN_SUFFIX, now + cooldown)
+                .apply();
+        return cooldown;
+    }
+
+    /**
+     * Returns the tokens of the bucket at the given time, removing the bucket once it is full.
+     */
+    private double refill(String key, int capacity, long refillMs, long now) {
+        if (!mPrefs.contains(key + TOKENS_SUFFIX)) {
+            return capacity;
+        }
+        double tokens = mPrefs.getFloat(key + TOKENS_SUFFIX, capacity);
+        long updated = mPrefs.getLong(key + UPDATED_SUFFIX, now);
+        // A clock moved backwards doesn't give tokens back
+        long elapsed = Math.max(0, now - updated);
+
+        tokens = Math.min(capacity, tokens + (double) elapsed / refillMs);
+        if (tokens >= capacity && !DEVICE_KEY.equals(key)) {
+            mPrefs.edit()
+                    .remove(key + TOKENS_SUFFIX)
+                    .remove(key + UPDATED_SUFFIX)
+                    .apply();
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the failures of the number still counted at the given time.
+     */
+    private int failures(String numberKey, long now) {
+        int failures = mPrefs.getInt(numberKey + FAILURES_SUFFIX, 0);
+        long cooldownEnd = mPrefs.getLong(numberKey + COOLDOWN_SUFFIX, now);
+        // A clock moved backwards doesn't forget failures
+        long quiet = Math.max(0, now - cooldownEnd);
+        return (int) Math.max(0, failures - quiet / FAILURE_DECAY_MS);
+    }
+
+    private void forgetFailures(String numberKey) {
+        mPrefs.edit()
+                .remove(numberKey + FAILURES_SUFFIX)
+                .remove(numberKey + COOLDOWN_SUFFIX)
+                .apply();
+    }
+
+    private static String numberKey(String phoneNumber) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(phoneNumber.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // Required on every Android version
+            throw new IllegalStateException(e);
+        }
+        StringBuilder key = new StringBuilder(NUMBER_KEY_PREFIX.length() + digest.length * 2)
+                .append(NUMBER_KEY_PREFIX);
+        for (byte b : digest) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+}
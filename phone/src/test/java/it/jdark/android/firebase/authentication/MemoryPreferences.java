@@ -0,0 +1,147 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// SharedPreferences kept in a map, applied as soon as an editor commits
+final class MemoryPreferences implements SharedPreferences {
+
+    final Map<String, Object> mValues = new HashMap<>();
+
+    @Override
+    public Map<String, ?> getAll() {
+        return new HashMap<>(mValues);
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        return mValues.containsKey(key) ? (String) mValues.get(key) : defValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    @Override
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        return mValues.containsKey(key) ? (Set<String>) mValues.get(key) : defValues;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        return mValues.containsKey(key) ? (Integer) mValues.get(key) : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        return mValues.containsKey(key) ? (Long) mValues.get(key) : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        return mValues.containsKey(key) ? (Float) mValues.get(key) : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        return mValues.containsKey(key) ? (Boolean) mValues.get(key) : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new MemoryEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    private final class MemoryEditor implements Editor {
+
+        private final Map<String, Object> mChanges = new HashMap<>();
+        private boolean mClear;
+
+        @Override
+        public Editor putString(String key, @Nullable String value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, @Nullable Set<String> values) {
+            mChanges.put(key, values);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            // A null value removes the key, as in the framework
+            mChanges.put(key, null);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            mClear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            if (mClear) {
+                mValues.clear();
+            }
+            for (Map.Entry<String, Object> change : mChanges.entrySet()) {
+                if (change.getValue() == null) {
+                    mValues.remove(change.getKey());
+                } else {
+                    mValues.put(change.getKey(), change.getValue());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package it.jdark.android.firebase.authentication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PhoneNumberNormalizerTest {
+
+    @Test
+    public void normalizesNationalNumbers() {
+        assertEquals("+393471234567", PhoneNumberNormalizer.normalize("+39", "347 123 4567"));
+        assertEquals("+390612345678", PhoneNumberNormalizer.normalize("+39", "06 1234 5678"));
+        assertEquals("+14155552671", PhoneNumberNormalizer.normalize("+1", "(415) 555-2671"));
+        assertEquals("+4915123456789", PhoneNumberNormalizer.normalize("49", "0151/23456789"));
+    }
+
+    @Test
+    public void dropsTrunkPrefix() {
+        assertEquals("+447911123456", PhoneNumberNormalizer.normalize("+44", "07911 123456"));
+        assertEquals("+14155552671", PhoneNumberNormalizer.normalize("+1", "1-415-555-2671"));
+        assertEquals("+79123456789", PhoneNumberNormalizer.normalize("+7", "8 912 345-67-89"));
+    }
+
+    @Test
+    public void normalizesInternationalNumbers() {
+        assertEquals("+447911123456", PhoneNumberNormalizer.normalize("+39", "+44 7911 123456"));
+        assertEquals("+447911123456", PhoneNumberNormalizer.normalize("+39", "0044 7911 123456"));
+        // Country not in the table
+        assertEquals("+35512345678", PhoneNumberNormalizer.normalize("+39", "+355 1234 5678"));
+    }
+
+    @Test
+    public void sameKeyForEveryFormat() {
+        String key = PhoneNumberNormalizer.normalize("+44", "07911 123456");
+        assertEquals(key, PhoneNumberNormalizer.normalize("+44", "7911-123-456"));
+        assertEquals(key, PhoneNumberNormalizer.normalize("+1", "+44 7911 123456"));
+        assertEquals(key, PhoneNumberNormalizer.normalize("+39", "00447911123456"));
+    }
+
+    @Test
+    public void refusesInvalidNumbers() {
+        assertNull(PhoneNumberNormalizer.normalize("+39", ""));
+        assertNull(PhoneNumberNormalizer.normalize("+39", "347 12a 4567"));
+        assertNull(PhoneNumberNormalizer.normalize("+39", "347+1234567"));
+        assertNull(PhoneNumberNormalizer.normalize("+39", "5471234567"));
+        assertNull(PhoneNumberNormalizer.normalize("+1", "0415555267"));
+        assertNull(PhoneNumberNormalizer.normalize("+1", "415555267"));
+        assertNull(PhoneNumberNormalizer.normalize("+44", "0791112345678"));
+        assertNull(PhoneNumberNormalizer.normalize("+39", "+0 123456789"));
+        assertNull(PhoneNumberNormalizer.normalize("+39", "+355 1234 5678 9012 34"));
+        assertNull(PhoneNumberNormalizer.normalize("", "3471234567"));
+        assertNull(PhoneNumberNormalizer.normalize("+1234", "3471234567"));
+    }
+}
@@ -0,0 +1,190 @@
+package it.jdark.android.firebase.authentication;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PhoneVerificationStoreTest {
+
+    private static final long TTL_MS = TimeUnit.SECONDS.toMillis(PhoneVerificationStore.TIMEOUT_SECONDS);
+    private static final long STARTED_AT = 1500000000000L;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final MemoryPreferences mPrefs = new MemoryPreferences();
+    private final TestClock mClock = new TestClock();
+    private final SecretKey mKey;
+    private final PhoneVerificationStore mStore;
+
+    public PhoneVerificationStoreTest() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        mKey = generator.generateKey();
+        mStore = store(new PhoneVerificationStore.KeySource() {
+            @Override
+            public SecretKey getKey() {
+                return mKey;
+            }
+        });
+        mClock.mNow = STARTED_AT + 1000;
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        mStore.persist(session("verification-1"));
+
+        PhoneVerificationStore.Session loaded = load(mStore);
+        assertEquals("+393331234567", loaded.mNumber);
+        assertEquals("verification-1", loaded.mVerificationId);
+        assertEquals(STARTED_AT, loaded.mStartedAt);
+        // The resending token never reaches the disk
+        assertNull(loaded.mToken);
+    }
+
+    @Test
+    public void recordIsEncrypted() {
+        mStore.persist(session("verification-1"));
+
+        for (Object value : mPrefs.mValues.values()) {
+            assertFalse(String.valueOf(value).contains("3331234567"));
+            assertFalse(String.valueOf(value).contains("verification-1"));
+        }
+    }
+
+    @Test
+    public void nothingStoredBeforeCodeSent() throws Exception {
+        mStore.persist(session(null));
+
+        assertTrue(mPrefs.mValues.isEmpty());
+        assertNull(load(mStore));
+    }
+
+    @Test
+    public void expiresWithVerificationTimeout() throws Exception {
+        mStore.persist(session("verification-1"));
+
+        mClock.mNow = STARTED_AT + TTL_MS - 1;
+        assertEquals("verification-1", load(mStore).mVerificationId);
+
+        mClock.mNow = STARTED_AT + TTL_MS;
+        assertNull(load(mStore));
+        assertTrue(mPrefs.mValues.isEmpty());
+    }
+
+    @Test
+    public void clockMovedBackwardsExpires() throws Exception {
+        mStore.persist(session("verification-1"));
+
+        mClock.mNow = STARTED_AT - 1;
+        assertNull(load(mStore));
+    }
+
+    @Test
+    public void clearForgetsSession() throws Exception {
+        mStore.persist(session("verification-1"));
+        mStore.clear();
+
+        assertNull(load(mStore));
+        assertTrue(mPrefs.mValues.isEmpty());
+    }
+
+    @Test
+    public void tamperedRecordIsDropped() throws Exception {
+        mStore.persist(session("verification-1"));
+        String data = mPrefs.getString("data", null);
+        char flipped = data.charAt(0) == '0' ? '1' : '0';
+        mPrefs.edit().putString("data", flipped + data.substring(1)).apply();
+
+        assertNull(load(mStore));
+        assertTrue(mPrefs.mValues.isEmpty());
+    }
+
+    @Test
+    public void recordOfAnotherKeyIsDropped() throws Exception {
+        mStore.persist(session("verification-1"));
+        final SecretKey other = KeyGenerator.getInstance("AES").generateKey();
+        PhoneVerificationStore rekeyed = store(new PhoneVerificationStore.KeySource() {
+            @Override
+            public SecretKey getKey() {
+                return other;
+            }
+        });
+
+        assertNull(load(rekeyed));
+        assertTrue(mPrefs.mValues.isEmpty());
+    }
+
+    @Test
+    public void withoutKeyNothingIsStored() throws Exception {
+        PhoneVerificationStore store = store(new PhoneVerificationStore.KeySource() {
+            @Override
+            public SecretKey getKey() {
+                return null;
+            }
+        });
+        store.persist(session("verification-1"));
+
+        assertTrue(mPrefs.mValues.isEmpty());
+        assertNull(load(store));
+    }
+
+    @Test
+    public void sessionRemainingTime() {
+        PhoneVerificationStore.Session session = session("verification-1");
+
+        assertFalse(session.isExpired(STARTED_AT));
+        assertEquals(TTL_MS, session.getRemainingMs(STARTED_AT));
+        assertEquals(1, session.getRemainingMs(STARTED_AT + TTL_MS - 1));
+        assertTrue(session.isExpired(STARTED_AT + TTL_MS));
+        assertEquals(0, session.getRemainingMs(STARTED_AT + TTL_MS + 1));
+    }
+
+    @Test
+    public void instanceStateExpiresOnTheStoreClock() {
+        Bundle state = new Bundle();
+        PhoneVerificationStore.save(state, session("verification-1"));
+
+        assertEquals("verification-1", mStore.restore(state).mVerificationId);
+        mClock.mNow = STARTED_AT + TTL_MS;
+        assertNull(mStore.restore(state));
+        assertNull(mStore.restore(null));
+    }
+
+    private PhoneVerificationStore store(PhoneVerificationStore.KeySource keys) {
+        return new PhoneVerificationStore(mPrefs, keys, DIRECT, mClock);
+    }
+
+    private static PhoneVerificationStore.Session session(String verificationId) {
+        return new PhoneVerificationStore.Session("+393331234567", verificationId, null, STARTED_AT);
+    }
+
+    private static PhoneVerificationStore.Session load(PhoneVerificationStore store) throws Exception {
+        // Completed by the direct executor
+        return store.load().getResult();
+    }
+
+    private static final class TestClock implements Clock {
+        long mNow;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
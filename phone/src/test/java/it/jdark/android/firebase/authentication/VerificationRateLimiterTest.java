@@ -0,0 +1,133 @@
+package it.jdark.android.firebase.authentication;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VerificationRateLimiterTest {
+
+    private static final String NUMBER = "+393331234567";
+    private static final String OTHER_NUMBER = "+393331234568";
+
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long START = 1500000000000L;
+
+    private final MemoryPreferences mPrefs = new MemoryPreferences();
+    private final TestClock mClock = new TestClock();
+    // No jitter: every cooldown is the full window
+    private final VerificationRateLimiter mLimiter = new VerificationRateLimiter(mPrefs, mClock, new Random() {
+        @Override
+        public double nextDouble() {
+            return 1;
+        }
+    });
+
+    public VerificationRateLimiterTest() {
+        mClock.mNow = START;
+    }
+
+    @Test
+    public void numberBucketRefills() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, mLimiter.tryAcquire(NUMBER));
+        }
+        assertEquals(5 * MINUTE_MS, mLimiter.tryAcquire(NUMBER));
+        // Other numbers have their own bucket
+        assertEquals(0, mLimiter.tryAcquire(OTHER_NUMBER));
+
+        mClock.mNow += 5 * MINUTE_MS;
+        assertEquals(0, mLimiter.tryAcquire(NUMBER));
+    }
+
+    @Test
+    public void deviceBucketCoversAllNumbers() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, mLimiter.tryAcquire("+39333123456" + i));
+        }
+        assertEquals(10 * MINUTE_MS, mLimiter.tryAcquire("+393331234569"));
+    }
+
+    @Test
+    public void clockMovedBackwardsGivesNoTokens() {
+        for (int i = 0; i < 3; i++) {
+            mLimiter.tryAcquire(NUMBER);
+        }
+        mClock.mNow -= 60 * MINUTE_MS;
+        assertTrue(mLimiter.tryAcquire(NUMBER) > 0);
+    }
+
+    @Test
+    public void failuresDoubleTheCooldown() {
+        assertEquals(30 * 1000, mLimiter.onFailure(NUMBER));
+        assertEquals(30 * 1000, mLimiter.tryAcquire(NUMBER));
+        assertEquals(60 * 1000, mLimiter.onFailure(NUMBER));
+        assertEquals(120 * 1000, mLimiter.onFailure(NUMBER));
+        // Only the failing number waits
+        assertEquals(0, mLimiter.tryAcquire(OTHER_NUMBER));
+    }
+
+    @Test
+    public void cooldownIsCapped() {
+        long cooldown = 0;
+        for (int i = 0; i < 20; i++) {
+            cooldown = mLimiter.onFailure(NUMBER);
+        }
+        assertEquals(60 * MINUTE_MS, cooldown);
+    }
+
+    @Test
+    public void successResetsTheBackoff() {
+        mLimiter.onFailure(NUMBER);
+        mLimiter.onFailure(NUMBER);
+        mLimiter.onSuccess(NUMBER);
+
+        assertEquals(0, mLimiter.tryAcquire(NUMBER));
+        assertEquals(30 * 1000, mLimiter.onFailure(NUMBER));
+    }
+
+    @Test
+    public void failuresDecayAfterQuietPeriod() {
+        mLimiter.onFailure(NUMBER);
+        mLimiter.onFailure(NUMBER);
+        long cooldown = mLimiter.onFailure(NUMBER);
+
+        // One failure forgotten an hour after the cooldown ended
+        mClock.mNow += cooldown + VerificationRateLimiter.FAILURE_DECAY_MS;
+        assertEquals(120 * 1000, mLimiter.onFailure(NUMBER));
+    }
+
+    @Test
+    public void decayedFailuresAreRemoved() {
+        long cooldown = mLimiter.onFailure(NUMBER);
+        mClock.mNow += cooldown + VerificationRateLimiter.FAILURE_DECAY_MS;
+
+        assertEquals(0, mLimiter.tryAcquire(NUMBER));
+        for (String key : mPrefs.mValues.keySet()) {
+            assertFalse(key, key.endsWith(".failures") || key.endsWith(".cooldown"));
+        }
+        assertEquals(30 * 1000, mLimiter.onFailure(NUMBER));
+    }
+
+    @Test
+    public void numbersAreNotStoredInClear() {
+        mLimiter.tryAcquire(NUMBER);
+        mLimiter.onFailure(NUMBER);
+
+        for (String key : mPrefs.mValues.keySet()) {
+            assertFalse(key, key.contains("3331234567"));
+        }
+    }
+
+    private static final class TestClock implements Clock {
+        long mNow;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
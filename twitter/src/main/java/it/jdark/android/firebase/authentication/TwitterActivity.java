@@ -0,0 +1,224 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.TextView;
+
+import com.google.android.play.core.splitcompat.SplitCompat;
+import com.google.firebase.auth.AuthCredential;
+import com.google.firebase.auth.TwitterAuthProvider;
+import com.twitter.sdk.android.Twitter;
+import com.twitter.sdk.android.core.Callback;
+import com.twitter.sdk.android.core.Result;
+import com.twitter.sdk.android.core.TwitterException;
+import com.twitter.sdk.android.core.TwitterSession;
+import com.twitter.sdk.android.core.identity.TwitterLoginButton;
+
+import it.jdark.android.firebase.authentication.twitter.R;
+
+public class TwitterActivity extends AppCompatActivity implements View.OnClickListener,
+        AuthSessionManager.Observer, AuthResultDispatcher.Callback {
+
+    private final String TAG = getClass().getSimpleName();
+
+    private static final AuthResultDispatcher.CredentialFactory CREDENTIAL =
+            new AuthResultDispatcher.CredentialFactory() {
+                @Override
+                public AuthCredential create(String token, String secret) {
+                    return TwitterAuthProvider.getCredential(token, secret);
+                }
+            };
+
+    private AuthBackend mBackend;
+    private AuthResultDispatcher mResultDispatcher;
+
+    private Views mViews;
+    private AuthUiRenderer mRenderer;
+    private AuthTrace.Flow mTrace;
+
+    @Override
+    protected void attachBaseContext(Context newBase) {
+        super.attachBaseContext(newBase);
+        // Classes and resources of this module, when it was installed on demand
+        SplitCompat.installActivity(this);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        ProviderRegistry.getInstance(this).ensure(ProviderRegistry.Provider.TWITTER);
+
+        setContentView(R.layout.activity_twitter);
+        mViews = new Views(findViewById(android.R.id.content));
+        mRenderer = new AuthUiRenderer.Builder(mViews.status, mViews.detail)
+                .signedInViews(mViews.signOutButton)
+                .signedOutViews(mViews.signInButton)
+                .build();
+
+        mViews.signOutButton.setOnClickListener(this);
+
+        mBackend = AuthBackends.get();
+        mResultDispatcher = new AuthResultDispatcher(this, this);
+
+        // Called after the button started the Twitter login
+        mViews.signInButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (mTrace == null) {
+                    mTrace = AuthTrace.start("twitter");
+                }
+            }
+        });
+        mViews.signInButton.setCallback(new LoginCallback(new LifecycleBridge<>(this)));
+
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        AuthSessionManager.getInstance(this).addObserver(this);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        AuthSessionManager.getInstance(this).removeObserver(this);
+    }
+
+    @Override
+    public void onSessionChanged(UserSnapshot user) {
+        if (user != null) {
+            // User is signed in
+            AuthLog.d(TAG, "onSessionChanged: signed_in -> " + user.getUid());
+        } else {
+            // User is signed out
+            AuthLog.d(TAG, "onSessionChanged: signed_out");
+        }
+        updateUI(user);
+    }
+
+    @Override
+    public void onAuthSucceeded(UserSnapshot user) {
+        if (mTrace != null) {
+            mTrace.stage("sign_in_with_credential");
+        }
+        updateUI(user);
+        if (mTrace != null) {
+            mTrace.endOnNextFrame(mViews.status, "first_update_ui");
+            mTrace = null;
+        }
+    }
+
+    @Override
+    public void onAuthFailed(AuthError error) {
+        failTrace("sign_in_with_credential");
+        signOut();
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        mViews.signInButton.onActivityResult(requestCode, resultCode, data);
+    }
+
+    @Override
+    public void onClick(View v) {
+        int i = v.getId();
+        if (i == R.id.sign_out_button) {
+            signOut();
+        }
+    }
+
+    private void onLoginSucceeded(Result<TwitterSession> result) {
+        AuthLog.d(TAG, "success: -> Login " + result);
+        if (mTrace != null) {
+            mTrace.stage("provider_login");
+        }
+        handleTwitterSession(result.data);
+    }
+
+    private void onLoginFailed(TwitterException exception) {
+        AuthLog.w(TAG, "failure: -> Not login ", exception);
+        failTrace("provider_login");
+        updateUI(null);
+    }
+
+    private void handleTwitterSession(TwitterSession data) {
+        if (mTrace == null) {
+            mTrace = AuthTrace.start("twitter");
+        }
+        mResultDispatcher.dispatchCredential(mBackend, CREDENTIAL, data.getAuthToken().token,
+                data.getAuthToken().secret, mTrace);
+    }
+
+    private void signOut() {
+        mBackend.signOut();
+        Twitter.logOut();
+
+        updateUI(null);
+    }
+
+    private void failTrace(String stage) {
+        if (mTrace != null) {
+            mTrace.fail(stage);
+            mTrace = null;
+        }
+    }
+
+    private void updateUI(UserSnapshot user) {
+        if (user != null) {
+            // Signed in
+            mRenderer.render(AuthUiState.signedIn(
+                    getString(R.string.twitter_status_form, user.getEmail()),
+                    getString(R.string.twitter_detail_form, user.getUid())));
+        } else {
+            // Signed out
+            mRenderer.render(AuthUiState.signedOut(
+                    getString(R.string.sign_out_text), getString(R.string.detail_empty_text)));
+        }
+    }
+
+    // Kept by the Twitter auth client while the login runs, reaches the screen only while it is alive
+    private static final class LoginCallback extends Callback<TwitterSession> {
+
+        private final LifecycleBridge<TwitterActivity> mBridge;
+
+        LoginCallback(LifecycleBridge<TwitterActivity> bridge) {
+            mBridge = bridge;
+        }
+
+        @Override
+        public void success(Result<TwitterSession> result) {
+            TwitterActivity activity = mBridge.get();
+            if (activity != null) {
+                activity.onLoginSucceeded(result);
+            }
+        }
+
+        @Override
+        public void failure(TwitterException exception) {
+            TwitterActivity activity = mBridge.get();
+            if (activity != null) {
+                activity.onLoginFailed(exception);
+            }
+        }
+    }
+
+    // Views of R.layout.activity_twitter, looked up once when the content is set
+    static final class Views {
+        final TextView status;
+        final TextView detail;
+        final TwitterLoginButton signInButton;
+        final View signOutButton;
+
+        Views(View root) {
+            status = (TextView) root.findViewById(R.id.status);
+            detail = (TextView) root.findViewById(R.id.details);
+            signInButton = (TwitterLoginButton) root.findViewById(R.id.sign_in_twitter_button);
+            signOutButton = root.findViewById(R.id.sign_out_button);
+        }
+    }
+}
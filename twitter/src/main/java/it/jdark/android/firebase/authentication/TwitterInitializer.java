@@ -0,0 +1,23 @@
+package it.jdark.android.firebase.authentication;
+
+import android.content.Context;
+
+import com.twitter.sdk.android.Twitter;
+import com.twitter.sdk.android.core.TwitterAuthConfig;
+
+import io.fabric.sdk.android.Fabric;
+
+/**
+ * Starts Fabric with the Twitter kit, called by {@link ProviderRegistry} once the module is
+ * installed.
+ */
+public final class TwitterInitializer implements ProviderRegistry.Initializer {
+
+    @Override
+    public void initialize(Context context) {
+        TwitterAuthConfig authConfig = new TwitterAuthConfig(
+                context.getString(R.string.twitter_consumer_key),
+                context.getString(R.string.twitter_consumer_secret));
+        Fabric.with(context, new Twitter(authConfig));
+    }
+}